@@ -45,6 +45,7 @@ dependencies {
 
     // KNet
     compileOnly(project(":xplat", configuration = "namedElements"))
+    annotationProcessor(project(":processor"))
 
     testImplementation("junit:junit:4.13.2")
 }
@@ -26,11 +26,11 @@
 package com.kneelawk.knet.example.net;
 
 import com.kneelawk.knet.api.channel.context.PayloadCodec;
+import com.kneelawk.knet.api.codegen.FixedBits;
+import com.kneelawk.knet.api.codegen.GenerateCodec;
 import com.kneelawk.knet.example.blockentity.FancyLightBlockEntity;
 
-public record ColorUpdatePayload(byte value, byte index) {
-    public static final PayloadCodec<ColorUpdatePayload> CODEC = new PayloadCodec<>((buf, obj) -> {
-        buf.writeByte(obj.value());
-        buf.writeByte(obj.index());
-    }, buf -> new ColorUpdatePayload(buf.readByte(), buf.readByte()));
+@GenerateCodec
+public record ColorUpdatePayload(byte value, @FixedBits(2) byte index) {
+    public static final PayloadCodec<ColorUpdatePayload> CODEC = ColorUpdatePayloadCodec.CODEC;
 }
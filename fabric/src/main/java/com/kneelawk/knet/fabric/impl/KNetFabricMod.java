@@ -28,10 +28,16 @@ package com.kneelawk.knet.fabric.impl;
 import org.jetbrains.annotations.Nullable;
 
 import net.fabricmc.api.ModInitializer;
+import net.fabricmc.fabric.api.entity.event.v1.ServerEntityWorldChangeEvents;
+import net.fabricmc.fabric.api.entity.event.v1.ServerPlayerEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 
 import net.minecraft.server.MinecraftServer;
 
+import com.kneelawk.knet.impl.PlayerSpatialIndex;
+
 public class KNetFabricMod implements ModInitializer {
     public static @Nullable MinecraftServer currentServer;
 
@@ -39,5 +45,11 @@ public class KNetFabricMod implements ModInitializer {
     public void onInitialize() {
         ServerLifecycleEvents.SERVER_STARTING.register(server -> currentServer = server);
         ServerLifecycleEvents.SERVER_STOPPED.register(server -> currentServer = null);
+        ServerTickEvents.END_WORLD_TICK.register(PlayerSpatialIndex::onWorldTick);
+        ServerWorldEvents.UNLOAD.register((server, world) -> PlayerSpatialIndex.onWorldUnload(world));
+        ServerEntityWorldChangeEvents.AFTER_PLAYER_CHANGE_WORLD.register(
+            (player, origin, destination) -> PlayerSpatialIndex.onPlayerChangedWorld(player));
+        ServerPlayerEvents.AFTER_RESPAWN.register(
+            (oldPlayer, newPlayer, alive) -> PlayerSpatialIndex.onPlayerChangedWorld(newPlayer));
     }
 }
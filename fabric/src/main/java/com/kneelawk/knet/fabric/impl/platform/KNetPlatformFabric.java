@@ -1,7 +1,10 @@
 package com.kneelawk.knet.fabric.impl.platform;
 
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
+
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
-import net.fabricmc.fabric.api.networking.v1.PacketByteBufs;
 import net.fabricmc.fabric.api.networking.v1.PlayerLookup;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 
@@ -9,25 +12,37 @@ import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.PacketByteBuf;
 import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.network.packet.Packet;
 import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 import com.kneelawk.knet.fabric.impl.KNetFabricMod;
 import com.kneelawk.knet.fabric.impl.proxy.CommonProxy;
 import com.kneelawk.knet.impl.KNetLog;
+import com.kneelawk.knet.impl.PayloadEncoding;
+import com.kneelawk.knet.impl.PlayerSpatialIndex;
 import com.kneelawk.knet.impl.platform.KNetPlatform;
 
 public class KNetPlatformFabric implements KNetPlatform {
+    private static PacketByteBuf encode(CustomPayload payload) {
+        return PayloadEncoding.encodeToBuffer(payload);
+    }
+
+    // The payload is encoded once, and the same packet is sent to every player, which only copies the encoded bytes
+    // for each connection.
+    private static Packet<?> encodeShared(CustomPayload payload) {
+        return ServerPlayNetworking.createS2CPacket(payload.id(), encode(payload));
+    }
+
     @Override
     public void sendPlayToAll(CustomPayload payload) {
         if (KNetFabricMod.currentServer != null) {
-            PacketByteBuf buf = PacketByteBufs.create();
-            payload.write(buf);
-            PlayerLookup.all(KNetFabricMod.currentServer)
-                .forEach(player -> ServerPlayNetworking.send(player, payload.id(), buf));
+            Packet<?> packet = encodeShared(payload);
+            PlayerLookup.all(KNetFabricMod.currentServer).forEach(player -> player.networkHandler.sendPacket(packet));
         } else {
             KNetLog.LOG.warn("Attempted to send payload {} to all clients when no server is running on this side.",
                 payload.id());
@@ -36,8 +51,7 @@ public class KNetPlatformFabric implements KNetPlatform {
 
     @Override
     public void sendPlay(PlayerEntity player, CustomPayload payload) {
-        PacketByteBuf buf = PacketByteBufs.create();
-        payload.write(buf);
+        PacketByteBuf buf = encode(payload);
 
         if (player.getWorld().isClient()) {
             ClientPlayNetworking.send(payload.id(), buf);
@@ -49,8 +63,7 @@ public class KNetPlatformFabric implements KNetPlatform {
     @Override
     public void sendPlayToServer(CustomPayload payload) {
         if (CommonProxy.getInstance().isPhysicalClient()) {
-            PacketByteBuf buf = PacketByteBufs.create();
-            payload.write(buf);
+            PacketByteBuf buf = encode(payload);
             ClientPlayNetworking.send(payload.id(), buf);
         } else {
             KNetLog.LOG.warn("Attempted to send payload {} to the server from the server-side.", payload.id());
@@ -62,9 +75,8 @@ public class KNetPlatformFabric implements KNetPlatform {
         if (KNetFabricMod.currentServer != null) {
             ServerWorld world = KNetFabricMod.currentServer.getWorld(dim);
             if (world != null) {
-                PacketByteBuf buf = PacketByteBufs.create();
-                payload.write(buf);
-                PlayerLookup.world(world).forEach(player -> ServerPlayNetworking.send(player, payload.id(), buf));
+                Packet<?> packet = encodeShared(payload);
+                PlayerLookup.world(world).forEach(player -> player.networkHandler.sendPacket(packet));
             } else {
                 KNetLog.LOG.warn("Attempted to send payload {} to world {} but that world does not exist.",
                     payload.id(), dim.getValue());
@@ -78,34 +90,48 @@ public class KNetPlatformFabric implements KNetPlatform {
 
     @Override
     public void sendPlayToTrackingEntity(Entity entity, CustomPayload payload) {
-        PacketByteBuf buf = PacketByteBufs.create();
-        payload.write(buf);
+        Packet<?> packet = encodeShared(payload);
         for (ServerPlayerEntity player : PlayerLookup.tracking(entity)) {
             // no guarantees whether the player is in the tracking list or not
             if (player == entity) continue;
-            ServerPlayNetworking.send(player, payload.id(), buf);
+            player.networkHandler.sendPacket(packet);
         }
     }
 
     @Override
     public void sendPlayToTrackingEntityAndSelf(Entity entity, CustomPayload payload) {
-        PacketByteBuf buf = PacketByteBufs.create();
-        payload.write(buf);
+        Packet<?> packet = encodeShared(payload);
         boolean sentToEntity = false;
         for (ServerPlayerEntity player : PlayerLookup.tracking(entity)) {
             // no guarantees whether the player is in the tracking list or not
             if (player == entity) sentToEntity = true;
-            ServerPlayNetworking.send(player, payload.id(), buf);
+            player.networkHandler.sendPacket(packet);
         }
         if (!sentToEntity && entity instanceof ServerPlayerEntity player) {
-            ServerPlayNetworking.send(player, payload.id(), buf);
+            player.networkHandler.sendPacket(packet);
         }
     }
 
     @Override
     public void sendPlayToTrackingChunk(ServerWorld world, ChunkPos pos, CustomPayload payload) {
-        PacketByteBuf buf = PacketByteBufs.create();
-        payload.write(buf);
-        PlayerLookup.tracking(world, pos).forEach(player -> ServerPlayNetworking.send(player, payload.id(), buf));
+        Packet<?> packet = encodeShared(payload);
+        PlayerLookup.tracking(world, pos).forEach(player -> player.networkHandler.sendPacket(packet));
+    }
+
+    @Override
+    public void sendPlayToNearby(ServerWorld world, Vec3d pos, double radius, @Nullable ServerPlayerEntity except,
+                                 Supplier<CustomPayload> payload) {
+        Packet<?> packet = null;
+        for (ServerPlayerEntity player : PlayerSpatialIndex.get(world).getInSphere(pos, radius)) {
+            if (player == except) continue;
+            // only encode once there is someone to send to
+            if (packet == null) packet = encodeShared(payload.get());
+            player.networkHandler.sendPacket(packet);
+        }
+    }
+
+    @Override
+    public @Nullable Object getServerConnectionKey() {
+        return CommonProxy.getInstance().getServerConnectionKey();
     }
 }
@@ -25,14 +25,16 @@
 
 package com.kneelawk.knet.fabric.impl.proxy;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.fabricmc.fabric.api.client.networking.v1.ClientPlayNetworking;
 
+import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 
 import com.kneelawk.knet.api.channel.Channel;
 import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
 import com.kneelawk.knet.api.handling.PayloadHandlingSilentException;
-import com.kneelawk.knet.api.util.NetByteBuf;
 import com.kneelawk.knet.fabric.impl.FabricPayloadHandlingContext;
 import com.kneelawk.knet.impl.KNetLog;
 
@@ -42,13 +44,18 @@ public class ClientProxy extends CommonProxy {
         return true;
     }
 
+    @Override
+    public @Nullable Object getServerConnectionKey() {
+        return MinecraftClient.getInstance().getNetworkHandler();
+    }
+
     @Override
     public void registerPlayChannel(Channel channel) {
         super.registerPlayChannel(channel);
         if (channel.isToClient()) {
             ClientPlayNetworking.registerGlobalReceiver(channel.getId(), (client, handler, buf, responseSender) -> {
                 try {
-                    channel.handleClientPayload(channel.getReader().apply(NetByteBuf.asNetByteBuf(buf)),
+                    channel.handleClientPayload(readReceived(channel, buf, handler),
                         new FabricPayloadHandlingContext(client, client.player, handler.getConnection()::disconnect));
                 } catch (PayloadHandlingSilentException e) {
                     // do nothing
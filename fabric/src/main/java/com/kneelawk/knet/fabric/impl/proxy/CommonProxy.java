@@ -27,17 +27,23 @@ package com.kneelawk.knet.fabric.impl.proxy;
 
 import java.lang.reflect.InvocationTargetException;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.fabricmc.api.EnvType;
 import net.fabricmc.fabric.api.networking.v1.ServerPlayNetworking;
 import net.fabricmc.loader.api.FabricLoader;
 
+import net.minecraft.network.PacketByteBuf;
 import net.minecraft.text.Text;
 
 import com.kneelawk.knet.api.channel.Channel;
+import com.kneelawk.knet.api.channel.ChannelCompression;
+import com.kneelawk.knet.api.channel.NetPayload;
 import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
 import com.kneelawk.knet.api.handling.PayloadHandlingSilentException;
 import com.kneelawk.knet.api.util.NetByteBuf;
 import com.kneelawk.knet.fabric.impl.FabricPayloadHandlingContext;
+import com.kneelawk.knet.impl.InternTables;
 import com.kneelawk.knet.impl.KNetLog;
 
 public class CommonProxy {
@@ -65,12 +71,23 @@ public class CommonProxy {
         return false;
     }
 
+    public @Nullable Object getServerConnectionKey() {
+        return null;
+    }
+
+    protected static NetPayload readReceived(Channel channel, PacketByteBuf buf, Object connection)
+        throws PayloadHandlingDisconnectException {
+        ChannelCompression compression = channel.getCompression();
+        NetByteBuf netBuf = compression != null ? compression.decompress(buf) : NetByteBuf.asNetByteBuf(buf);
+        return InternTables.read(channel, netBuf, connection);
+    }
+
     public void registerPlayChannel(Channel channel) {
         if (channel.isToServer()) {
             ServerPlayNetworking.registerGlobalReceiver(channel.getId(),
                 (server, player, handler, buf, responseSender) -> {
                     try {
-                        channel.handleServerPayload(channel.getReader().apply(NetByteBuf.asNetByteBuf(buf)),
+                        channel.handleServerPayload(readReceived(channel, buf, handler),
                             new FabricPayloadHandlingContext(server, player, handler::disconnect));
                     } catch (PayloadHandlingSilentException e) {
                         // do nothing
@@ -25,15 +25,24 @@
 
 package com.kneelawk.knet.neoforge.api;
 
+import io.netty.buffer.Unpooled;
+
 import net.neoforged.fml.loading.FMLEnvironment;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
 import net.neoforged.neoforge.network.registration.IPayloadRegistrar;
 
+import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.text.Text;
 
 import com.kneelawk.knet.api.channel.Channel;
+import com.kneelawk.knet.api.channel.ChannelCompression;
 import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
 import com.kneelawk.knet.api.handling.PayloadHandlingException;
 import com.kneelawk.knet.api.handling.PayloadHandlingSilentException;
+import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.impl.EncodedPayload;
+import com.kneelawk.knet.impl.InternTables;
 import com.kneelawk.knet.impl.KNetLog;
 import com.kneelawk.knet.neoforge.impl.NeoForgePayloadHandlingContext;
 
@@ -53,11 +62,26 @@ public class KNetNeoForge {
      * @param channel   the channel to register.
      */
     public static void registerPlay(IPayloadRegistrar registrar, Channel channel) {
-        registrar.play(channel.getId(), channel.getReader().intoPacketReader(), handler -> {
+        if (channel.getInternCapacity() > 0 || channel.getCompression() != null) {
+            // payloads that use intern tables can only be decoded once we know which connection they came from, and
+            // compressed payloads are decompressed along with them
+            registerPlay(registrar, channel, buf -> {
+                byte[] bytes = new byte[buf.readableBytes()];
+                buf.readBytes(bytes);
+                return new EncodedPayload(channel.getId(), bytes);
+            });
+        } else {
+            registerPlay(registrar, channel, channel.getReader().intoPacketReader());
+        }
+    }
+
+    private static <T extends CustomPayload> void registerPlay(IPayloadRegistrar registrar, Channel channel,
+                                                               PacketByteBuf.PacketReader<T> reader) {
+        registrar.play(channel.getId(), reader, handler -> {
             if (channel.isToServer()) {
                 handler.server((payload, ctx) -> {
                     try {
-                        channel.handleServerPayload(payload,
+                        channel.handleServerPayload(decode(channel, payload, ctx),
                             new NeoForgePayloadHandlingContext(ctx.workHandler()::execute, ctx.player().orElse(null),
                                 ctx.packetHandler()::disconnect));
                     } catch (PayloadHandlingSilentException e) {
@@ -74,7 +98,7 @@ public class KNetNeoForge {
             if (channel.isToClient() && FMLEnvironment.dist.isClient()) {
                 handler.client((payload, ctx) -> {
                     try {
-                        channel.handleClientPayload(payload,
+                        channel.handleClientPayload(decode(channel, payload, ctx),
                             new NeoForgePayloadHandlingContext(ctx.workHandler()::execute, ctx.player().orElse(null),
                                 ctx.packetHandler()::disconnect));
                     } catch (PayloadHandlingSilentException e) {
@@ -90,4 +114,17 @@ public class KNetNeoForge {
             }
         });
     }
+
+    private static CustomPayload decode(Channel channel, CustomPayload payload, IPayloadContext ctx)
+        throws PayloadHandlingDisconnectException {
+        // payloads sent to a single player over a local connection are never encoded in the first place, but payloads
+        // sent to multiple players are pre-encoded regardless of the connection
+        if (payload instanceof EncodedPayload encoded) {
+            ChannelCompression compression = channel.getCompression();
+            NetByteBuf buf = compression != null ? compression.decompress(Unpooled.wrappedBuffer(encoded.bytes())) :
+                NetByteBuf.asNetByteBuf(Unpooled.wrappedBuffer(encoded.bytes()));
+            return InternTables.read(channel, buf, ctx.channelHandlerContext().channel());
+        }
+        return payload;
+    }
 }
@@ -26,9 +26,47 @@
 package com.kneelawk.knet.neoforge.impl;
 
 import net.neoforged.fml.common.Mod;
+import net.neoforged.neoforge.common.NeoForge;
+import net.neoforged.neoforge.event.TickEvent;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.level.LevelEvent;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 
 import com.kneelawk.knet.impl.KNetImpl;
+import com.kneelawk.knet.impl.PlayerSpatialIndex;
 
 @Mod(KNetImpl.MOD_ID)
 public class KNetNeoForgeMod {
+    public KNetNeoForgeMod() {
+        NeoForge.EVENT_BUS.addListener(KNetNeoForgeMod::onLevelTick);
+        NeoForge.EVENT_BUS.addListener(KNetNeoForgeMod::onLevelUnload);
+        NeoForge.EVENT_BUS.addListener(KNetNeoForgeMod::onPlayerChangedDimension);
+        NeoForge.EVENT_BUS.addListener(KNetNeoForgeMod::onPlayerRespawn);
+    }
+
+    private static void onLevelTick(TickEvent.LevelTickEvent event) {
+        if (event.phase == TickEvent.Phase.END && event.level instanceof ServerWorld world) {
+            PlayerSpatialIndex.onWorldTick(world);
+        }
+    }
+
+    private static void onLevelUnload(LevelEvent.Unload event) {
+        if (event.getLevel() instanceof ServerWorld world) {
+            PlayerSpatialIndex.onWorldUnload(world);
+        }
+    }
+
+    private static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+        if (event.getEntity() instanceof ServerPlayerEntity player) {
+            PlayerSpatialIndex.onPlayerChangedWorld(player);
+        }
+    }
+
+    private static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+        if (event.getEntity() instanceof ServerPlayerEntity player) {
+            PlayerSpatialIndex.onPlayerChangedWorld(player);
+        }
+    }
 }
@@ -1,5 +1,9 @@
 package com.kneelawk.knet.neoforge.impl.platform;
 
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
+
 import net.neoforged.fml.loading.FMLEnvironment;
 import net.neoforged.neoforge.network.PacketDistributor;
 
@@ -10,15 +14,22 @@ import net.minecraft.registry.RegistryKey;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 import com.kneelawk.knet.impl.KNetLog;
+import com.kneelawk.knet.impl.PayloadEncoding;
+import com.kneelawk.knet.impl.PlayerSpatialIndex;
 import com.kneelawk.knet.impl.platform.KNetPlatform;
+import com.kneelawk.knet.neoforge.impl.client.KNetNeoForgeClient;
 
 public class KNetPlatformNeoForge implements KNetPlatform {
+    // Payloads sent to multiple players are encoded once up front, so that each connection only has to copy the bytes
+    // instead of encoding the payload again.
+
     @Override
     public void sendPlayToAll(CustomPayload payload) {
-        PacketDistributor.ALL.noArg().send(payload);
+        PacketDistributor.ALL.noArg().send(PayloadEncoding.preEncode(payload));
     }
 
     @Override
@@ -41,21 +52,42 @@ public class KNetPlatformNeoForge implements KNetPlatform {
 
     @Override
     public void sendPlayToDimension(RegistryKey<World> dim, CustomPayload payload) {
-        PacketDistributor.DIMENSION.with(dim).send(payload);
+        PacketDistributor.DIMENSION.with(dim).send(PayloadEncoding.preEncode(payload));
     }
 
     @Override
     public void sendPlayToTrackingEntity(Entity entity, CustomPayload payload) {
-        PacketDistributor.TRACKING_ENTITY.with(entity).send(payload);
+        PacketDistributor.TRACKING_ENTITY.with(entity).send(PayloadEncoding.preEncode(payload));
     }
 
     @Override
     public void sendPlayToTrackingEntityAndSelf(Entity entity, CustomPayload payload) {
-        PacketDistributor.TRACKING_ENTITY_AND_SELF.with(entity).send(payload);
+        PacketDistributor.TRACKING_ENTITY_AND_SELF.with(entity).send(PayloadEncoding.preEncode(payload));
     }
 
     @Override
     public void sendPlayToTrackingChunk(ServerWorld world, ChunkPos pos, CustomPayload payload) {
-        PacketDistributor.TRACKING_CHUNK.with(world.getChunk(pos.x, pos.z)).send(payload);
+        PacketDistributor.TRACKING_CHUNK.with(world.getChunk(pos.x, pos.z)).send(PayloadEncoding.preEncode(payload));
+    }
+
+    @Override
+    public void sendPlayToNearby(ServerWorld world, Vec3d pos, double radius, @Nullable ServerPlayerEntity except,
+                                 Supplier<CustomPayload> payload) {
+        CustomPayload encoded = null;
+        for (ServerPlayerEntity player : PlayerSpatialIndex.get(world).getInSphere(pos, radius)) {
+            if (player == except) continue;
+            // only encode once there is someone to send to
+            if (encoded == null) encoded = PayloadEncoding.preEncode(payload.get());
+            PacketDistributor.PLAYER.with(player).send(encoded);
+        }
+    }
+
+    @Override
+    public @Nullable Object getServerConnectionKey() {
+        if (FMLEnvironment.dist.isClient()) {
+            return KNetNeoForgeClient.getServerConnectionKey();
+        } else {
+            return null;
+        }
     }
 }
@@ -0,0 +1,63 @@
+plugins {
+    `java-library`
+    `maven-publish`
+    id("com.kneelawk.versioning")
+}
+
+val maven_group: String by project
+group = maven_group
+
+val archives_base_name: String by project
+base {
+    archivesName.set("$archives_base_name-${project.name}")
+}
+
+java.docsDir.set(rootProject.layout.buildDirectory.map { it.dir("docs").dir("${rootProject.name}-${project.name}") })
+
+repositories {
+    mavenCentral()
+}
+
+// The processor only refers to KNet and Minecraft types by name, so it has no dependencies of its own and works with
+// both yarn and mojmap sources.
+
+tasks {
+    withType<JavaCompile> {
+        options.encoding = "UTF-8"
+        options.release.set(17)
+        // don't try to run the processor on itself
+        options.compilerArgs.add("-proc:none")
+    }
+
+    java {
+        sourceCompatibility = JavaVersion.VERSION_17
+        targetCompatibility = JavaVersion.VERSION_17
+
+        withJavadocJar()
+        withSourcesJar()
+    }
+
+    jar {
+        from(rootProject.file("LICENSE")) {
+            rename { "${it}_${archives_base_name}" }
+        }
+    }
+}
+
+publishing {
+    publications {
+        create<MavenPublication>("mavenJava") {
+            artifactId = project.name
+            from(components["java"])
+        }
+    }
+
+    repositories {
+        if (System.getenv("PUBLISH_REPO") != null) {
+            maven {
+                name = "publishRepo"
+                url = uri(rootProject.file(System.getenv("PUBLISH_REPO")))
+            }
+        }
+    }
+}
@@ -0,0 +1,599 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+import static com.kneelawk.knet.processor.CodecProcessor.ANNOTATION_PACKAGE;
+import static com.kneelawk.knet.processor.CodecProcessor.GENERATE_CODEC;
+
+/**
+ * Generates the source of the codec class for a single record.
+ * <p>
+ * Generated codecs consist of a static {@code write} and {@code read} method that write each component with direct
+ * calls to {@code NetByteBuf}, so that they are monomorphic and can be inlined. Anything that would otherwise be looked
+ * up on every call, like enum constants or palette list codecs, is held in static fields of the codec class.
+ */
+final class CodecGenerator {
+    private static final String NET_BYTE_BUF = "com.kneelawk.knet.api.util.NetByteBuf";
+    private static final String ENUM_CODEC = "com.kneelawk.knet.api.util.EnumCodec";
+    private static final String PAYLOAD_CODEC = "com.kneelawk.knet.api.channel.context.PayloadCodec";
+    private static final String DECODER_EXCEPTION = "io.netty.handler.codec.DecoderException";
+
+    private static final String VAR_INT = ANNOTATION_PACKAGE + ".VarInt";
+    private static final String FIXED_BITS = ANNOTATION_PACKAGE + ".FixedBits";
+    private static final String QUANTIZED = ANNOTATION_PACKAGE + ".Quantized";
+    private static final String PALETTED = ANNOTATION_PACKAGE + ".Paletted";
+    private static final String RELATIVE_TO = ANNOTATION_PACKAGE + ".RelativeTo";
+
+    private static final String BUF = "$buf";
+    private static final String VALUE = "$value";
+
+    private final Elements elements;
+    private final Types types;
+    private final Mappings mappings;
+    private final TypeElement record;
+    private final String packageName;
+    private final String simpleName;
+
+    private final Map<String, String> fields = new LinkedHashMap<>();
+    private final StringBuilder write = new StringBuilder();
+    private final StringBuilder read = new StringBuilder();
+
+    CodecGenerator(ProcessingEnvironment processingEnv, Mappings mappings, TypeElement record) {
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+        this.mappings = mappings;
+        this.record = record;
+        PackageElement pkg = elements.getPackageOf(record);
+        packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        simpleName = codecSimpleName(record);
+    }
+
+    String getQualifiedName() {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    String generate() throws InvalidComponentException {
+        List<? extends RecordComponentElement> components = record.getRecordComponents();
+        List<String> names = new ArrayList<>(components.size());
+        for (int i = 0; i < components.size(); i++) {
+            component(components, i);
+            names.add(components.get(i).getSimpleName().toString());
+        }
+
+        String recordName = record.getQualifiedName().toString();
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) sb.append("package ").append(packageName).append(";\n\n");
+        sb.append("/**\n");
+        sb.append(" * Generated codec for {@link ").append(recordName).append("}.\n");
+        sb.append(" */\n");
+        sb.append("@javax.annotation.processing.Generated(\"").append(CodecProcessor.class.getName()).append("\")\n");
+        if (record.getModifiers().contains(Modifier.PUBLIC)) sb.append("public ");
+        sb.append("final class ").append(simpleName).append(" {\n");
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            // keys are "type = initializer"
+            String key = field.getKey();
+            int split = key.indexOf(" = ");
+            sb.append("    private static final ").append(key, 0, split).append(' ').append(field.getValue())
+                .append(key, split, key.length()).append(";\n");
+        }
+        if (!fields.isEmpty()) sb.append('\n');
+
+        sb.append("    /**\n");
+        sb.append("     * The codec for {@link ").append(recordName).append("}.\n");
+        sb.append("     */\n");
+        sb.append("    public static final ").append(PAYLOAD_CODEC).append('<').append(recordName)
+            .append("> CODEC =\n");
+        sb.append("        new ").append(PAYLOAD_CODEC).append("<>(").append(simpleName).append("::write, ")
+            .append(simpleName).append("::read);\n\n");
+
+        sb.append("    private ").append(simpleName).append("() {\n");
+        sb.append("    }\n\n");
+
+        sb.append("    public static void write(").append(NET_BYTE_BUF).append(' ').append(BUF).append(", ")
+            .append(recordName).append(' ').append(VALUE).append(") {\n");
+        sb.append(write);
+        sb.append("    }\n\n");
+
+        sb.append("    public static ").append(recordName).append(" read(").append(NET_BYTE_BUF).append(' ')
+            .append(BUF).append(") {\n");
+        sb.append(read);
+        sb.append("        return new ").append(recordName).append('(').append(String.join(", ", names))
+            .append(");\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private void component(List<? extends RecordComponentElement> components, int index)
+        throws InvalidComponentException {
+        RecordComponentElement component = components.get(index);
+        String name = component.getSimpleName().toString();
+        String value = VALUE + "." + name + "()";
+        TypeMirror type = component.asType();
+
+        AnnotationMirror varInt = annotation(component, VAR_INT);
+        AnnotationMirror fixedBits = annotation(component, FIXED_BITS);
+        AnnotationMirror quantized = annotation(component, QUANTIZED);
+        AnnotationMirror paletted = annotation(component, PALETTED);
+        AnnotationMirror relativeTo = annotation(component, RELATIVE_TO);
+        AnnotationMirror encoding = null;
+        for (AnnotationMirror mirror : new AnnotationMirror[]{varInt, fixedBits, quantized, paletted, relativeTo}) {
+            if (mirror == null) continue;
+            if (encoding != null) {
+                throw new InvalidComponentException("Conflicting encoding annotations on component " + name, component);
+            }
+            encoding = mirror;
+        }
+
+        if (type.getKind().isPrimitive()) {
+            if (paletted != null || relativeTo != null) throw unsupportedEncoding(encoding, component);
+            primitive(component, name, value, type.getKind(), encoding);
+            return;
+        }
+        if (varInt != null || fixedBits != null || quantized != null) throw unsupportedEncoding(encoding, component);
+
+        if (relativeTo != null) {
+            relativeBlockPos(components, index, value, relativeTo);
+            return;
+        }
+
+        if (isList(type)) {
+            list(component, name, value, (DeclaredType) type, paletted != null);
+            return;
+        }
+        if (paletted != null) throw unsupportedEncoding(paletted, component);
+
+        ValueCodec codec = valueCodec(type, component);
+        writeLine(codec.write(BUF, value));
+        readLine(codec.type() + " " + name + " = " + codec.read(BUF));
+    }
+
+    private void primitive(RecordComponentElement component, String name, String value, TypeKind kind,
+                           AnnotationMirror encoding) throws InvalidComponentException {
+        String writeCall;
+        String readExpr;
+        boolean encodingUsed = encoding != null;
+        String encodingName = encoding == null ? "" : annotationName(encoding);
+
+        switch (kind) {
+            case BOOLEAN -> {
+                encodingUsed = false;
+                writeCall = BUF + ".writeBoolean(" + value + ")";
+                readExpr = BUF + ".readBoolean()";
+            }
+            case CHAR -> {
+                encodingUsed = false;
+                writeCall = BUF + ".writeChar(" + value + ")";
+                readExpr = BUF + ".readChar()";
+            }
+            case BYTE, SHORT -> {
+                String typeName = kind == TypeKind.BYTE ? "byte" : "short";
+                String netty = kind == TypeKind.BYTE ? "Byte" : "Short";
+                if (encodingName.equals(FIXED_BITS)) {
+                    int bits = fixedBits(encoding, component, kind == TypeKind.BYTE ? 8 : 16);
+                    writeCall = BUF + ".writeFixedBits(" + value + ", " + bits + ")";
+                    readExpr = "(" + typeName + ") " + BUF + ".readFixedBits(" + bits + ")";
+                } else {
+                    encodingUsed = false;
+                    writeCall = BUF + ".write" + netty + "(" + value + ")";
+                    readExpr = BUF + ".read" + netty + "()";
+                }
+            }
+            case INT -> {
+                if (encodingName.equals(VAR_INT)) {
+                    String method = unsigned(encoding) ? "VarUnsignedInt" : "VarInt";
+                    writeCall = BUF + ".write" + method + "(" + value + ")";
+                    readExpr = BUF + ".read" + method + "()";
+                } else if (encodingName.equals(FIXED_BITS)) {
+                    int bits = fixedBits(encoding, component, 32);
+                    writeCall = BUF + ".writeFixedBits(" + value + ", " + bits + ")";
+                    readExpr = BUF + ".readFixedBits(" + bits + ")";
+                } else {
+                    encodingUsed = false;
+                    writeCall = BUF + ".writeInt(" + value + ")";
+                    readExpr = BUF + ".readInt()";
+                }
+            }
+            case LONG -> {
+                if (encodingName.equals(VAR_INT)) {
+                    String method = unsigned(encoding) ? "VarUnsignedLong" : "VarLong";
+                    writeCall = BUF + ".write" + method + "(" + value + ")";
+                    readExpr = BUF + ".read" + method + "()";
+                } else if (encodingName.equals(FIXED_BITS)) {
+                    int bits = fixedBits(encoding, component, 64);
+                    writeCall = BUF + ".writeFixedBits(" + value + ", " + bits + ")";
+                    readExpr = BUF + ".readFixedBitsLong(" + bits + ")";
+                } else {
+                    encodingUsed = false;
+                    writeCall = BUF + ".writeLong(" + value + ")";
+                    readExpr = BUF + ".readLong()";
+                }
+            }
+            case FLOAT, DOUBLE -> {
+                boolean isFloat = kind == TypeKind.FLOAT;
+                String method = isFloat ? "Float" : "Double";
+                if (encodingName.equals(QUANTIZED)) {
+                    String args = quantizedArgs(encoding, component, isFloat);
+                    writeCall = BUF + ".writeQuantized" + method + "(" + value + ", " + args + ")";
+                    readExpr = BUF + ".readQuantized" + method + "(" + args + ")";
+                } else {
+                    encodingUsed = false;
+                    writeCall = BUF + ".write" + method + "(" + value + ")";
+                    readExpr = BUF + ".read" + method + "()";
+                }
+            }
+            default -> throw new InvalidComponentException("Unsupported component type " + kind, component);
+        }
+
+        if (encoding != null && !encodingUsed) throw unsupportedEncoding(encoding, component);
+
+        writeLine(writeCall);
+        readLine(kind.name().toLowerCase(Locale.ROOT) + " " + name + " = " + readExpr);
+    }
+
+    private void relativeBlockPos(List<? extends RecordComponentElement> components, int index, String value,
+                                  AnnotationMirror relativeTo) throws InvalidComponentException {
+        RecordComponentElement component = components.get(index);
+        if (!isType(component.asType(), mappings.blockPosType())) throw unsupportedEncoding(relativeTo, component);
+
+        String anchor = (String) annotationValue(relativeTo, "value");
+        RecordComponentElement anchorComponent = null;
+        for (int i = 0; i < index; i++) {
+            if (components.get(i).getSimpleName().contentEquals(anchor)) {
+                anchorComponent = components.get(i);
+                break;
+            }
+        }
+        if (anchorComponent == null || !isType(anchorComponent.asType(), mappings.blockPosType())) {
+            throw new InvalidComponentException(
+                "@RelativeTo must name a block position component declared before " + component.getSimpleName() +
+                    " but got '" + anchor + "'", component);
+        }
+
+        writeLine(BUF + ".writeBlockPosRelative(" + VALUE + "." + anchor + "(), " + value + ")");
+        readLine(mappings.blockPosType() + " " + component.getSimpleName() + " = " + BUF + ".readBlockPosRelative(" +
+            anchor + ")");
+    }
+
+    private void list(RecordComponentElement component, String name, String value, DeclaredType type,
+                      boolean paletted) throws InvalidComponentException {
+        List<? extends TypeMirror> arguments = type.getTypeArguments();
+        if (arguments.size() != 1 || arguments.get(0).getKind() != TypeKind.DECLARED) {
+            throw new InvalidComponentException(
+                "List component " + name + " must have a concrete element type", component);
+        }
+        TypeMirror elementType = arguments.get(0);
+        ValueCodec element = valueCodec(elementType, component);
+        String listType = "java.util.List<" + element.type() + ">";
+
+        if (paletted) {
+            String init = isEnum(elementType) ? PAYLOAD_CODEC + ".enumList(" + element.type() + ".class)" :
+                PAYLOAD_CODEC + ".paletteList(" + element.codec() + ")";
+            String field = field(PAYLOAD_CODEC + "<" + listType + ">", init);
+            writeLine(field + ".encoder().accept(" + BUF + ", " + value + ")");
+            readLine(listType + " " + name + " = " + field + ".decoder().apply(" + BUF + ")");
+            return;
+        }
+
+        write.append("        {\n");
+        write.append("            ").append(listType).append(" $list = ").append(value).append(";\n");
+        write.append("            ").append(BUF).append(".writeVarUnsignedInt($list.size());\n");
+        write.append("            for (").append(element.type()).append(" $element : $list) {\n");
+        write.append("                ").append(element.write(BUF, "$element")).append(";\n");
+        write.append("            }\n");
+        write.append("        }\n");
+
+        String size = "$" + name + "Size";
+        readLine("int " + size + " = " + BUF + ".readVarUnsignedInt()");
+        read.append("        if (").append(size).append(" < 0) {\n");
+        read.append("            throw new ").append(DECODER_EXCEPTION).append("(\"Read a negative length for ")
+            .append(name).append(": \" + ").append(size).append(");\n");
+        read.append("        }\n");
+        // bound the initial capacity by the readable bytes, like PayloadCodec does, so a bad length can't cause a huge
+        // allocation
+        readLine(listType + " " + name + " = new java.util.ArrayList<>(Math.min(" + size + ", " + BUF +
+            ".readableBytes()))");
+        read.append("        for (int $i = 0; $i < ").append(size).append("; $i++) {\n");
+        read.append("            ").append(name).append(".add(").append(element.read(BUF)).append(");\n");
+        read.append("        }\n");
+    }
+
+    private ValueCodec valueCodec(TypeMirror type, Element component) throws InvalidComponentException {
+        if (type.getKind() != TypeKind.DECLARED) {
+            throw new InvalidComponentException(
+                "Unsupported type " + type + " of component " + component.getSimpleName(), component);
+        }
+        if (!((DeclaredType) type).getTypeArguments().isEmpty()) {
+            throw new InvalidComponentException(
+                "Generic types other than List are not supported, on component " + component.getSimpleName(),
+                component);
+        }
+
+        TypeElement element = (TypeElement) types.asElement(type);
+        String name = element.getQualifiedName().toString();
+
+        if (name.equals("java.lang.String")) {
+            return new MethodCodec(name, mappings.writeString(), mappings.readString());
+        } else if (name.equals("java.util.UUID")) {
+            return new MethodCodec(name, mappings.writeUuid(), mappings.readUuid());
+        } else if (name.equals(mappings.identifierType())) {
+            return new MethodCodec(name, mappings.writeIdentifier(), mappings.readIdentifier());
+        } else if (name.equals(mappings.blockPosType())) {
+            return new MethodCodec(name, "writeBlockPos", "readBlockPos");
+        } else if (name.equals(mappings.blockType())) {
+            return new FieldCodec(name, PAYLOAD_CODEC + ".BLOCK");
+        } else if (name.equals(mappings.blockStateType())) {
+            return new FieldCodec(name, PAYLOAD_CODEC + ".BLOCK_STATE");
+        } else if (name.equals(mappings.itemType())) {
+            return new FieldCodec(name, PAYLOAD_CODEC + ".ITEM");
+        } else if (name.equals(mappings.fluidType())) {
+            return new FieldCodec(name, PAYLOAD_CODEC + ".FLUID");
+        }
+
+        if (element.getKind() == ElementKind.ENUM) {
+            String field = field(ENUM_CODEC + "<" + name + ">", ENUM_CODEC + ".of(" + name + ".class)");
+            return new EnumValueCodec(name, field);
+        }
+
+        if (element.getKind() == ElementKind.RECORD && annotation(element, GENERATE_CODEC) != null) {
+            PackageElement pkg = elements.getPackageOf(element);
+            String codecName = codecSimpleName(element);
+            return new GeneratedCodec(name, pkg.isUnnamed() ? codecName : pkg.getQualifiedName() + "." + codecName);
+        }
+
+        for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+            if (field.getSimpleName().contentEquals("CODEC") && field.getModifiers().contains(Modifier.STATIC) &&
+                !field.getModifiers().contains(Modifier.PRIVATE) &&
+                types.erasure(field.asType()).toString().equals(PAYLOAD_CODEC)) {
+                return new FieldCodec(name, name + ".CODEC");
+            }
+        }
+
+        throw new InvalidComponentException("Unsupported type " + name + " of component " + component.getSimpleName() +
+            ". Types without built-in support must be records annotated with @GenerateCodec or have a static " +
+            "PayloadCodec CODEC field.", component);
+    }
+
+    /**
+     * Adds a static field to the codec class, reusing an existing field with the same type and initializer.
+     */
+    private String field(String type, String initializer) {
+        return fields.computeIfAbsent(type + " = " + initializer, key -> "$field" + fields.size());
+    }
+
+    private void writeLine(String statement) {
+        write.append("        ").append(statement).append(";\n");
+    }
+
+    private void readLine(String statement) {
+        read.append("        ").append(statement).append(";\n");
+    }
+
+    private boolean isList(TypeMirror type) {
+        TypeElement list = elements.getTypeElement("java.util.List");
+        return type.getKind() == TypeKind.DECLARED &&
+            types.isSameType(types.erasure(type), types.erasure(list.asType()));
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        Element element = types.asElement(type);
+        return element != null && element.getKind() == ElementKind.ENUM;
+    }
+
+    private boolean isType(TypeMirror type, String qualifiedName) {
+        if (type.getKind() != TypeKind.DECLARED) return false;
+        return ((TypeElement) types.asElement(type)).getQualifiedName().contentEquals(qualifiedName);
+    }
+
+    private int fixedBits(AnnotationMirror fixedBits, Element component, int max) throws InvalidComponentException {
+        int bits = (Integer) annotationValue(fixedBits, "value");
+        if (bits < 1 || bits > max) {
+            throw new InvalidComponentException(
+                "@FixedBits on " + component.getSimpleName() + " must be between 1 and " + max + " but was " + bits,
+                component);
+        }
+        return bits;
+    }
+
+    private boolean unsigned(AnnotationMirror varInt) {
+        return (Boolean) annotationValue(varInt, "unsigned");
+    }
+
+    private String quantizedArgs(AnnotationMirror quantized, Element component, boolean isFloat)
+        throws InvalidComponentException {
+        double min = (Double) annotationValue(quantized, "min");
+        double max = (Double) annotationValue(quantized, "max");
+        int bits = (Integer) annotationValue(quantized, "bits");
+        int maxBits = isFloat ? 32 : 53;
+
+        if (bits < 1 || bits > maxBits) {
+            throw new InvalidComponentException(
+                "@Quantized bits on " + component.getSimpleName() + " must be between 1 and " + maxBits + " but was " +
+                    bits, component);
+        }
+        if (isFloat) {
+            float fMin = (float) min;
+            float fMax = (float) max;
+            if (!Float.isFinite(fMin) || !Float.isFinite(fMax) || !(fMin < fMax)) {
+                throw new InvalidComponentException(
+                    "@Quantized range on " + component.getSimpleName() + " must be finite and non-empty", component);
+            }
+            return fMin + "F, " + fMax + "F, " + bits;
+        } else {
+            if (!Double.isFinite(min) || !Double.isFinite(max) || !(min < max)) {
+                throw new InvalidComponentException(
+                    "@Quantized range on " + component.getSimpleName() + " must be finite and non-empty", component);
+            }
+            return min + ", " + max + ", " + bits;
+        }
+    }
+
+    private static AnnotationMirror annotation(Element element, String qualifiedName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (annotationName(mirror).equals(qualifiedName)) return mirror;
+        }
+        return null;
+    }
+
+    private static String annotationName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private Object annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : elements
+            .getElementValuesWithDefaults(mirror).entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) return entry.getValue().getValue();
+        }
+        throw new IllegalStateException("Missing annotation value " + name + " on " + mirror);
+    }
+
+    private static InvalidComponentException unsupportedEncoding(AnnotationMirror encoding, Element component) {
+        String name = annotationName(encoding);
+        return new InvalidComponentException("@" + name.substring(name.lastIndexOf('.') + 1) +
+            " cannot be applied to component " + component.getSimpleName() + " of type " + component.asType(),
+            component);
+    }
+
+    private static String codecSimpleName(TypeElement type) {
+        StringBuilder sb = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+            sb.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return sb.append("Codec").toString();
+    }
+
+    /**
+     * How a non-primitive value is written and read, as source code.
+     */
+    private interface ValueCodec {
+        String type();
+
+        String write(String buf, String value);
+
+        String read(String buf);
+
+        default String codec() {
+            return "new " + PAYLOAD_CODEC + "<" + type() + ">(($b, $v) -> " + write("$b", "$v") + ", $b -> " +
+                read("$b") + ")";
+        }
+    }
+
+    private record MethodCodec(String type, String writeMethod, String readMethod) implements ValueCodec {
+        @Override
+        public String write(String buf, String value) {
+            return buf + "." + writeMethod + "(" + value + ")";
+        }
+
+        @Override
+        public String read(String buf) {
+            return buf + "." + readMethod + "()";
+        }
+    }
+
+    private record FieldCodec(String type, String field) implements ValueCodec {
+        @Override
+        public String write(String buf, String value) {
+            return field + ".encoder().accept(" + buf + ", " + value + ")";
+        }
+
+        @Override
+        public String read(String buf) {
+            return field + ".decoder().apply(" + buf + ")";
+        }
+
+        @Override
+        public String codec() {
+            return field;
+        }
+    }
+
+    private record EnumValueCodec(String type, String field) implements ValueCodec {
+        @Override
+        public String write(String buf, String value) {
+            return field + ".write(" + buf + ", " + value + ")";
+        }
+
+        @Override
+        public String read(String buf) {
+            return field + ".read(" + buf + ")";
+        }
+    }
+
+    private record GeneratedCodec(String type, String codecClass) implements ValueCodec {
+        @Override
+        public String write(String buf, String value) {
+            return codecClass + ".write(" + buf + ", " + value + ")";
+        }
+
+        @Override
+        public String read(String buf) {
+            return codecClass + ".read(" + buf + ")";
+        }
+
+        @Override
+        public String codec() {
+            return codecClass + ".CODEC";
+        }
+    }
+
+    @SuppressWarnings("serial")
+    static final class InvalidComponentException extends Exception {
+        private final Element element;
+
+        InvalidComponentException(String message, Element element) {
+            super(message);
+            this.element = element;
+        }
+
+        Element getElement() {
+            return element;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.processor;
+
+import javax.lang.model.util.Elements;
+
+/**
+ * The names of Minecraft types and vanilla buffer methods used by generated codecs, which depend on the mappings the
+ * annotated sources are compiled against.
+ */
+record Mappings(String identifierType, String blockPosType, String blockType, String blockStateType, String itemType,
+                String fluidType, String writeString, String readString, String writeIdentifier,
+                String readIdentifier, String writeUuid, String readUuid) {
+    static final Mappings YARN =
+        new Mappings("net.minecraft.util.Identifier", "net.minecraft.util.math.BlockPos", "net.minecraft.block.Block",
+            "net.minecraft.block.BlockState", "net.minecraft.item.Item", "net.minecraft.fluid.Fluid", "writeString",
+            "readString", "writeIdentifier", "readIdentifier", "writeUuid", "readUuid");
+
+    static final Mappings MOJMAP =
+        new Mappings("net.minecraft.resources.ResourceLocation", "net.minecraft.core.BlockPos",
+            "net.minecraft.world.level.block.Block", "net.minecraft.world.level.block.state.BlockState",
+            "net.minecraft.world.item.Item", "net.minecraft.world.level.material.Fluid", "writeUtf", "readUtf",
+            "writeResourceLocation", "readResourceLocation", "writeUUID", "readUUID");
+
+    static Mappings detect(Elements elements) {
+        return elements.getTypeElement("net.minecraft.network.FriendlyByteBuf") != null ? MOJMAP : YARN;
+    }
+}
@@ -30,6 +30,8 @@ include(":xplat")
 include(":fabric")
 include(":neoforge")
 
+include(":processor")
+
 include(":xplat:mojmap")
 project(":xplat:mojmap").projectDir = file("xplat/mojmap")
 
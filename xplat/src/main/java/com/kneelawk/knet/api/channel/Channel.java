@@ -25,6 +25,8 @@
 
 package com.kneelawk.knet.api.channel;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.util.Identifier;
 
@@ -85,4 +87,29 @@ public interface Channel {
      * @return {@code true} if this channel receives on the client.
      */
     boolean isToClient();
+
+    /**
+     * Gets the capacity of the per-connection string intern tables for this channel.
+     * <p>
+     * If this is greater than 0, then {@link NetByteBuf#readInternedString()} and friends use a table that lasts for
+     * the whole connection when reading this channel's payloads.
+     *
+     * @return the capacity of this channel's intern tables, or {@code 0} if this channel does not intern strings.
+     */
+    default int getInternCapacity() {
+        return 0;
+    }
+
+    /**
+     * Gets how this channel's payloads are compressed.
+     * <p>
+     * If this is not {@code null}, then every payload on this channel is sent through
+     * {@link ChannelCompression#compress(CustomPayload)} and received through
+     * {@link ChannelCompression#decompress(io.netty.buffer.ByteBuf)}.
+     *
+     * @return this channel's compression, or {@code null} if this channel's payloads are not compressed.
+     */
+    default @Nullable ChannelCompression getCompression() {
+        return null;
+    }
 }
@@ -0,0 +1,362 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.channel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.network.packet.CustomPayload;
+
+import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.impl.EncodedPayload;
+import com.kneelawk.knet.impl.PayloadEncoding;
+
+/**
+ * Describes how a channel's payloads are compressed.
+ * <p>
+ * Each payload is compressed on its own with {@link Deflater}, optionally primed with a preset dictionary of byte
+ * sequences common in the channel's payloads. A dictionary lets even small payloads compress well, as they can refer
+ * back to the dictionary instead of only to their own earlier bytes. Dictionaries can be built from captured payloads
+ * with {@link #trainDictionary(Collection, int)} and shipped with the mod, but the exact same dictionary must be used
+ * on both sides.
+ * <p>
+ * Payloads smaller than {@link #getMinSize()} or larger than {@link #getMaxSize()} are never compressed, and payloads
+ * that do not shrink by at least {@link #getMinSavings()} are sent uncompressed, so already-compressed or random data
+ * doesn't pay for compression twice.
+ */
+public final class ChannelCompression {
+    /**
+     * The largest payload that will be decompressed, matching the largest custom payload vanilla accepts.
+     */
+    public static final int MAX_DECOMPRESSED_SIZE = 1 << 20;
+
+    private static final int RAW = 0;
+    private static final int DEFLATED = 1;
+
+    // dictionary training looks for common runs of this many bytes
+    private static final int GRAM_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 32;
+
+    @Nullable
+    private final byte[] dictionary;
+    private final int level;
+    private final int minSize;
+    private final int maxSize;
+    private final float minSavings;
+
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters;
+
+    private ChannelCompression(@Nullable byte[] dictionary, int level, int minSize, int maxSize, float minSavings) {
+        this.dictionary = dictionary;
+        this.level = level;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.minSavings = minSavings;
+        deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+    }
+
+    /**
+     * Creates a compression setting without a dictionary, that compresses payloads of at least 64 bytes that shrink by
+     * at least 10%.
+     *
+     * @return a new compression setting.
+     */
+    public static ChannelCompression create() {
+        return new ChannelCompression(null, Deflater.DEFAULT_COMPRESSION, 64, Integer.MAX_VALUE, 0.1f);
+    }
+
+    /**
+     * Creates a compression setting with the given preset dictionary, that compresses payloads of at least 16 bytes
+     * that shrink by at least 10%.
+     *
+     * @param dictionary the preset dictionary. The same dictionary must be used on both sides.
+     * @return a new compression setting.
+     */
+    public static ChannelCompression withDictionary(@NotNull byte[] dictionary) {
+        return new ChannelCompression(dictionary.clone(), Deflater.DEFAULT_COMPRESSION, 16, Integer.MAX_VALUE, 0.1f);
+    }
+
+    /**
+     * Creates a compression setting with a preset dictionary loaded from a resource shipped with the mod.
+     *
+     * @param owner a class from the mod, used to find the resource.
+     * @param path  the absolute path of the resource, like {@code "/assets/mymod/knet/dictionary.bin"}.
+     * @return a new compression setting.
+     * @throws IllegalArgumentException if the resource could not be loaded.
+     * @see #withDictionary(byte[])
+     */
+    public static ChannelCompression withDictionaryResource(@NotNull Class<?> owner, @NotNull String path)
+        throws IllegalArgumentException {
+        try (InputStream is = owner.getResourceAsStream(path)) {
+            if (is == null) throw new IllegalArgumentException("Compression dictionary " + path + " not found");
+            return withDictionary(is.readAllBytes());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to load compression dictionary " + path, e);
+        }
+    }
+
+    /**
+     * Gets a copy of this setting that uses the given compression level.
+     *
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}.
+     * @return a new compression setting.
+     */
+    public ChannelCompression level(int level) {
+        if ((level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) &&
+            level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        return new ChannelCompression(dictionary, level, minSize, maxSize, minSavings);
+    }
+
+    /**
+     * Gets a copy of this setting that only compresses payloads within the given size range.
+     * <p>
+     * Setting the maximum size to the connection's compression threshold avoids compressing payloads that vanilla
+     * will compress again anyway.
+     *
+     * @param minSize the smallest payload to compress, in bytes.
+     * @param maxSize the largest payload to compress, in bytes.
+     * @return a new compression setting.
+     */
+    public ChannelCompression sizeRange(int minSize, int maxSize) {
+        if (minSize < 0 || maxSize < minSize) {
+            throw new IllegalArgumentException("Invalid compression size range: " + minSize + ".." + maxSize);
+        }
+        return new ChannelCompression(dictionary, level, minSize, maxSize, minSavings);
+    }
+
+    /**
+     * Gets a copy of this setting that only sends payloads compressed if they shrink by at least the given fraction.
+     *
+     * @param minSavings the fraction of a payload's size that compression must save, from {@code 0} to {@code 1}.
+     * @return a new compression setting.
+     */
+    public ChannelCompression minSavings(float minSavings) {
+        if (!(minSavings >= 0 && minSavings <= 1)) {
+            throw new IllegalArgumentException("Invalid minimum compression savings: " + minSavings);
+        }
+        return new ChannelCompression(dictionary, level, minSize, maxSize, minSavings);
+    }
+
+    /**
+     * Gets the smallest payload this compresses.
+     *
+     * @return the smallest payload to compress, in bytes.
+     */
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Gets the largest payload this compresses.
+     *
+     * @return the largest payload to compress, in bytes.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Gets the fraction of a payload's size compression must save for the payload to be sent compressed.
+     *
+     * @return the minimum savings fraction.
+     */
+    public float getMinSavings() {
+        return minSavings;
+    }
+
+    /**
+     * Called by net-util platform code to encode and compress a payload being sent.
+     *
+     * @param payload the payload to compress, possibly already encoded.
+     * @return the payload to send.
+     */
+    public CustomPayload compress(@NotNull CustomPayload payload) {
+        byte[] raw = payload instanceof EncodedPayload encoded ? encoded.bytes() :
+            PayloadEncoding.encodeToBytes(payload, null);
+
+        if (raw.length >= minSize && raw.length <= maxSize) {
+            Deflater deflater = deflaters.get();
+            try {
+                if (dictionary != null) deflater.setDictionary(dictionary);
+                deflater.setInput(raw);
+                deflater.finish();
+
+                // only accept output that saves enough, anything longer is discarded
+                int header = 1 + NetByteBuf.varUnsignedIntSize(raw.length);
+                int limit = (int) (raw.length * (1 - minSavings)) - header;
+                if (limit > 0) {
+                    byte[] out = new byte[header + limit];
+                    int length = deflater.deflate(out, header, limit);
+                    if (deflater.finished()) {
+                        NetByteBuf headerBuf = NetByteBuf.asNetByteBuf(Unpooled.wrappedBuffer(out));
+                        headerBuf.writerIndex(0);
+                        headerBuf.writeByte(DEFLATED);
+                        headerBuf.writeVarUnsignedInt(raw.length);
+                        return new EncodedPayload(payload.id(), Arrays.copyOf(out, header + length));
+                    }
+                }
+            } finally {
+                deflater.reset();
+            }
+        }
+
+        byte[] out = new byte[raw.length + 1];
+        out[0] = RAW;
+        System.arraycopy(raw, 0, out, 1, raw.length);
+        return new EncodedPayload(payload.id(), out);
+    }
+
+    /**
+     * Called by net-util platform code to decompress a received payload's bytes.
+     *
+     * @param buf the received bytes.
+     * @return a buffer holding the decompressed payload.
+     * @throws DecoderException if the payload is malformed.
+     */
+    public NetByteBuf decompress(@NotNull ByteBuf buf) throws DecoderException {
+        NetByteBuf netBuf = NetByteBuf.asNetByteBuf(buf);
+        int mode = netBuf.readUnsignedByte();
+        if (mode == RAW) return NetByteBuf.asNetByteBuf(netBuf.slice());
+        if (mode != DEFLATED) throw new DecoderException("Read an unknown compression mode: " + mode);
+
+        int length = netBuf.readVarUnsignedInt();
+        if (length < 0 || length > MAX_DECOMPRESSED_SIZE) {
+            throw new DecoderException("Compressed payload length out of range: " + length);
+        }
+
+        // raw inflaters may need an extra byte of input past the end of the data
+        byte[] input = new byte[netBuf.readableBytes() + 1];
+        netBuf.readBytes(input, 0, input.length - 1);
+        byte[] output = new byte[length];
+        Inflater inflater = inflaters.get();
+        try {
+            inflater.setInput(input);
+            if (dictionary != null) inflater.setDictionary(dictionary);
+            int read = inflater.inflate(output);
+            if (read != length || !inflater.finished()) {
+                throw new DecoderException("Compressed payload does not match its length: " + length);
+            }
+        } catch (DataFormatException e) {
+            throw new DecoderException("Malformed compressed payload", e);
+        } finally {
+            inflater.reset();
+        }
+
+        return NetByteBuf.asNetByteBuf(Unpooled.wrappedBuffer(output));
+    }
+
+    /**
+     * Builds a preset dictionary from a set of captured payloads.
+     * <p>
+     * This picks the runs of bytes that occur in the most payloads. The resulting dictionary is meant to be saved and
+     * shipped with the mod, then loaded with {@link #withDictionaryResource(Class, String)}.
+     *
+     * @param samples the captured payloads, as written by their channel.
+     * @param size    the maximum size of the dictionary. Deflate only looks back 32 KiB, so anything larger is
+     *                wasted.
+     * @return the trained dictionary.
+     */
+    public static byte[] trainDictionary(@NotNull Collection<byte[]> samples, int size) {
+        if (size <= 0 || size > 32768) {
+            throw new IllegalArgumentException("Dictionary size must be between 1 and 32768: " + size);
+        }
+
+        // count how many samples contain each run of bytes
+        Long2IntMap gramCounts = new Long2IntOpenHashMap();
+        LongSet seen = new LongOpenHashSet();
+        for (byte[] sample : samples) {
+            seen.clear();
+            for (int i = 0; i + GRAM_LENGTH <= sample.length; i++) {
+                long gram = gramAt(sample, i);
+                if (seen.add(gram)) gramCounts.mergeInt(gram, 1, Integer::sum);
+            }
+        }
+
+        // score segments of each sample by how common their runs are
+        List<Segment> segments = new ArrayList<>();
+        for (byte[] sample : samples) {
+            for (int start = 0; start < sample.length; start += SEGMENT_LENGTH) {
+                int end = Math.min(sample.length, start + SEGMENT_LENGTH);
+                long score = 0;
+                for (int i = start; i + GRAM_LENGTH <= end; i++) {
+                    int count = gramCounts.get(gramAt(sample, i));
+                    // runs that only appear in a single payload don't help any other payload
+                    if (count > 1) score += count;
+                }
+                if (score > 0) segments.add(new Segment(sample, start, end, score));
+            }
+        }
+        segments.sort((a, b) -> Long.compare(b.score, a.score));
+
+        // deflate encodes nearby matches more cheaply, so the best segments go at the end
+        byte[] dictionary = new byte[size];
+        int position = size;
+        LongSet included = new LongOpenHashSet();
+        for (Segment segment : segments) {
+            int length = segment.end - segment.start;
+            if (length > position) continue;
+            if (length >= GRAM_LENGTH && !included.add(gramAt(segment.sample, segment.start))) continue;
+            position -= length;
+            System.arraycopy(segment.sample, segment.start, dictionary, position, length);
+            if (position == 0) break;
+        }
+
+        return Arrays.copyOfRange(dictionary, position, size);
+    }
+
+    private static long gramAt(byte[] bytes, int index) {
+        long gram = 0;
+        for (int i = 0; i < GRAM_LENGTH; i++) {
+            gram = (gram << 8) | (bytes[index + i] & 0xFF);
+        }
+        return gram;
+    }
+
+    private record Segment(byte[] sample, int start, int end, long score) {}
+}
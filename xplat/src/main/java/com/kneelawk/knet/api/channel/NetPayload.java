@@ -41,6 +41,22 @@ public interface NetPayload extends CustomPayload {
      */
     void write(NetByteBuf buf);
 
+    /**
+     * Estimates the number of bytes {@link #write(NetByteBuf)} will write.
+     * <p>
+     * This is used to allocate a buffer of the right size up front, so large payloads don't have to grow their buffer
+     * several times while being written. The size functions on {@link NetByteBuf}, like
+     * {@link NetByteBuf#varIntSize(int)} and {@link NetByteBuf#stringSize(CharSequence)}, help with computing this.
+     * <p>
+     * Payloads that don't implement this have their buffer sized by the average size of recent payloads with the same
+     * id instead.
+     *
+     * @return the estimated size of this payload in bytes, or {@code -1} if unknown.
+     */
+    default int estimateSize() {
+        return -1;
+    }
+
     /**
      * Default implementation that converts the given {@link PacketByteBuf} into a {@link NetByteBuf} in order to call
      * {@link #write(NetByteBuf)}.
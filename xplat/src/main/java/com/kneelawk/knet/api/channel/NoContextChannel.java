@@ -26,17 +26,20 @@
 package com.kneelawk.knet.api.channel;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 import com.kneelawk.knet.api.handling.PayloadHandlingContext;
@@ -44,6 +47,7 @@ import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
 import com.kneelawk.knet.api.handling.PayloadHandlingException;
 import com.kneelawk.knet.api.handling.PayloadHandlingSilentException;
 import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.impl.InternTables;
 import com.kneelawk.knet.impl.KNetLog;
 import com.kneelawk.knet.impl.platform.KNetPlatform;
 
@@ -59,6 +63,9 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
     private NoContextPayloadHandler<P> clientHandler = null;
     private NoContextPayloadHandler<P> serverHandler = null;
 
+    private int internCapacity = 0;
+    private ChannelCompression compression = null;
+
     /**
      * Creates a new context-less channel.
      *
@@ -164,6 +171,45 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
         });
     }
 
+    /**
+     * Enables per-connection string interning for this channel's payloads.
+     * <p>
+     * When enabled, strings and identifiers written with {@link NetByteBuf#writeInternedString(String)} and
+     * {@link NetByteBuf#writeInternedIdentifier(Identifier)} are only sent in full the first time they are sent over a
+     * connection, and as a small index afterward. Each side keeps up to {@code capacity} strings, evicting the
+     * least-recently-used ones.
+     * <p>
+     * Only payloads sent to a single connection, with {@code sendPlay} or {@code sendPlayToServer}, make use of the
+     * intern tables. Payloads sent to multiple players are encoded once for everyone, and so always write interned
+     * strings in full. Payloads on a channel with interning enabled are encoded as soon as they are sent, so they
+     * should only be sent from one thread per connection.
+     *
+     * @param capacity the maximum number of strings to keep in each connection's tables.
+     * @return this.
+     */
+    public NoContextChannel<P> internStrings(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Intern table capacity must be positive! (" + capacity + ")");
+        }
+        internCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Enables compression for this channel's payloads.
+     * <p>
+     * Payloads are compressed individually once they are encoded, after any string interning, and whether each one
+     * is sent compressed is decided by its own size and compression ratio. See {@link ChannelCompression} for how to
+     * train and ship a preset dictionary.
+     *
+     * @param compression how to compress this channel's payloads.
+     * @return this.
+     */
+    public NoContextChannel<P> compress(@NotNull ChannelCompression compression) {
+        this.compression = compression;
+        return this;
+    }
+
     /**
      * Sends a payload to all players connected to this server.
      *
@@ -171,7 +217,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToAll(@NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToAll(payload);
+        KNetPlatform.INSTANCE.sendPlayToAll(maybeCompress(payload));
     }
 
     /**
@@ -182,7 +228,8 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlay(@NotNull PlayerEntity player, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlay(player, payload);
+        InternTables.sendFor(player, internCapacity, payload,
+            encoded -> KNetPlatform.INSTANCE.sendPlay(player, maybeCompress(encoded)));
     }
 
     /**
@@ -192,7 +239,8 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToServer(@NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToServer(payload);
+        InternTables.sendForServer(internCapacity, payload,
+            encoded -> KNetPlatform.INSTANCE.sendPlayToServer(maybeCompress(encoded)));
     }
 
     /**
@@ -203,7 +251,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToDimension(@NotNull RegistryKey<World> dim, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToDimension(dim, payload);
+        KNetPlatform.INSTANCE.sendPlayToDimension(dim, maybeCompress(payload));
     }
 
     /**
@@ -214,7 +262,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToTracking(@NotNull Entity entity, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToTrackingEntity(entity, payload);
+        KNetPlatform.INSTANCE.sendPlayToTrackingEntity(entity, maybeCompress(payload));
     }
 
     /**
@@ -225,7 +273,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToTrackingAndSelf(@NotNull Entity entity, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToTrackingEntityAndSelf(entity, payload);
+        KNetPlatform.INSTANCE.sendPlayToTrackingEntityAndSelf(entity, maybeCompress(payload));
     }
 
     /**
@@ -237,7 +285,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToTracking(@NotNull ServerWorld world, @NotNull ChunkPos pos, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToTrackingChunk(world, pos, payload);
+        KNetPlatform.INSTANCE.sendPlayToTrackingChunk(world, pos, maybeCompress(payload));
     }
 
     /**
@@ -248,7 +296,7 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlayToTracking(@NotNull BlockEntity be, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToTrackingBlockEntity(be, payload);
+        KNetPlatform.INSTANCE.sendPlayToTrackingBlockEntity(be, maybeCompress(payload));
     }
 
     /**
@@ -260,7 +308,33 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
      */
     public void sendPlatyToTracking(@NotNull ServerWorld world, @NotNull BlockPos pos, @NotNull P payload) {
         checkPayload(payload);
-        KNetPlatform.INSTANCE.sendPlayToTrackingBlock(world, pos, payload);
+        KNetPlatform.INSTANCE.sendPlayToTrackingBlock(world, pos, maybeCompress(payload));
+    }
+
+    /**
+     * Sends a payload to all players in a world within a radius of a position.
+     * <p>
+     * This is useful for payloads like particles, sounds, and animations that only players close to the source care
+     * about, as it avoids sending them to every player within view distance.
+     * <p>
+     * Players are looked up in an index that is updated at the end of every world tick. A player that teleported more
+     * than a chunk within the world earlier in the current tick may be left out.
+     *
+     * @param world   the world to send to.
+     * @param pos     the center of the sphere that all receiver players should be within.
+     * @param radius  the radius, in blocks, of the sphere that all receiver players should be within.
+     * @param except  a player to exclude from the receivers, usually the player that caused the payload to be sent.
+     * @param payload the payload to send.
+     */
+    public void sendPlayToNearby(@NotNull ServerWorld world, @NotNull Vec3d pos, double radius,
+                                 @Nullable ServerPlayerEntity except, @NotNull P payload) {
+        checkPayload(payload);
+        if (!(radius >= 0.0)) throw new IllegalArgumentException("Radius must be non-negative, but was " + radius);
+        KNetPlatform.INSTANCE.sendPlayToNearby(world, pos, radius, except, () -> maybeCompress(payload));
+    }
+
+    private CustomPayload maybeCompress(CustomPayload payload) {
+        return compression == null ? payload : compression.compress(payload);
     }
 
     private void checkPayload(P payload) {
@@ -302,4 +376,14 @@ public class NoContextChannel<P extends NetPayload> implements Channel {
     public boolean isToClient() {
         return clientHandler != null;
     }
+
+    @Override
+    public int getInternCapacity() {
+        return internCapacity;
+    }
+
+    @Override
+    public @Nullable ChannelCompression getCompression() {
+        return compression;
+    }
 }
@@ -26,25 +26,30 @@
 package com.kneelawk.knet.api.channel.context;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.Text;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 import com.kneelawk.knet.api.channel.Channel;
+import com.kneelawk.knet.api.channel.ChannelCompression;
 import com.kneelawk.knet.api.channel.NetPayload;
 import com.kneelawk.knet.api.handling.PayloadHandlingContext;
 import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
 import com.kneelawk.knet.api.handling.PayloadHandlingSilentException;
 import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.impl.InternTables;
 import com.kneelawk.knet.impl.KNetLog;
 import com.kneelawk.knet.impl.platform.KNetPlatform;
 
@@ -64,6 +69,9 @@ public class ContextualChannel<C, P> implements Channel {
     private ContextualPayloadHandler<C, P> clientHandler = null;
     private ContextualPayloadHandler<C, P> serverHandler = null;
 
+    private int internCapacity = 0;
+    private ChannelCompression compression = null;
+
     /**
      * Creates a new contextual channel.
      *
@@ -117,6 +125,45 @@ public class ContextualChannel<C, P> implements Channel {
         return this;
     }
 
+    /**
+     * Enables per-connection string interning for this channel's payloads.
+     * <p>
+     * When enabled, strings and identifiers written with {@link NetByteBuf#writeInternedString(String)} and
+     * {@link NetByteBuf#writeInternedIdentifier(Identifier)} are only sent in full the first time they are sent over a
+     * connection, and as a small index afterward. Each side keeps up to {@code capacity} strings, evicting the
+     * least-recently-used ones.
+     * <p>
+     * Only payloads sent to a single connection, with {@code sendPlay} or {@code sendPlayToServer}, make use of the
+     * intern tables. Payloads sent to multiple players are encoded once for everyone, and so always write interned
+     * strings in full. Payloads on a channel with interning enabled are encoded as soon as they are sent, so they
+     * should only be sent from one thread per connection.
+     *
+     * @param capacity the maximum number of strings to keep in each connection's tables.
+     * @return this.
+     */
+    public @NotNull ContextualChannel<C, P> internStrings(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Intern table capacity must be positive! (" + capacity + ")");
+        }
+        internCapacity = capacity;
+        return this;
+    }
+
+    /**
+     * Enables compression for this channel's payloads.
+     * <p>
+     * Payloads are compressed individually once they are encoded, after any string interning, and whether each one
+     * is sent compressed is decided by its own size and compression ratio. See {@link ChannelCompression} for how to
+     * train and ship a preset dictionary.
+     *
+     * @param compression how to compress this channel's payloads.
+     * @return this.
+     */
+    public @NotNull ContextualChannel<C, P> compress(@NotNull ChannelCompression compression) {
+        this.compression = compression;
+        return this;
+    }
+
     /**
      * Sends a payload to all players connected to this server.
      *
@@ -124,7 +171,7 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlayToAll(@NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToAll(payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToAll(maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -135,7 +182,8 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlay(@NotNull PlayerEntity player, @NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlay(player, payload(context, payload));
+        InternTables.sendFor(player, internCapacity, payload(context, payload),
+            encoded -> KNetPlatform.INSTANCE.sendPlay(player, maybeCompress(encoded)));
     }
 
     /**
@@ -145,7 +193,8 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlayToServer(@NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToServer(payload(context, payload));
+        InternTables.sendForServer(internCapacity, payload(context, payload),
+            encoded -> KNetPlatform.INSTANCE.sendPlayToServer(maybeCompress(encoded)));
     }
 
     /**
@@ -156,7 +205,7 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlayToDimension(@NotNull RegistryKey<World> dim, @NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToDimension(dim, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToDimension(dim, maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -167,7 +216,7 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlayToTracking(@NotNull Entity entity, @NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToTrackingEntity(entity, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToTrackingEntity(entity, maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -178,7 +227,7 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload to send.
      */
     public void sendPlayToTrackingAndSelf(@NotNull Entity entity, @NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToTrackingEntityAndSelf(entity, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToTrackingEntityAndSelf(entity, maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -191,7 +240,7 @@ public class ContextualChannel<C, P> implements Channel {
      */
     public void sendPlayToTracking(@NotNull ServerWorld world, @NotNull ChunkPos pos, @NotNull C context,
                                    @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToTrackingChunk(world, pos, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToTrackingChunk(world, pos, maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -202,7 +251,7 @@ public class ContextualChannel<C, P> implements Channel {
      * @param payload the payload.
      */
     public void sendPlayToTracking(@NotNull BlockEntity be, @NotNull C context, @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToTrackingBlockEntity(be, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToTrackingBlockEntity(be, maybeCompress(payload(context, payload)));
     }
 
     /**
@@ -215,7 +264,34 @@ public class ContextualChannel<C, P> implements Channel {
      */
     public void sendPlatyToTracking(@NotNull ServerWorld world, @NotNull BlockPos pos, @NotNull C context,
                                     @NotNull P payload) {
-        KNetPlatform.INSTANCE.sendPlayToTrackingBlock(world, pos, payload(context, payload));
+        KNetPlatform.INSTANCE.sendPlayToTrackingBlock(world, pos, maybeCompress(payload(context, payload)));
+    }
+
+    /**
+     * Sends a payload to all players in a world within a radius of a position.
+     * <p>
+     * This is useful for payloads like particles, sounds, and animations that only players close to the source care
+     * about, as it avoids sending them to every player within view distance.
+     * <p>
+     * Players are looked up in an index that is updated at the end of every world tick. A player that teleported more
+     * than a chunk within the world earlier in the current tick may be left out.
+     *
+     * @param world   the world to send to.
+     * @param pos     the center of the sphere that all receiver players should be within.
+     * @param radius  the radius, in blocks, of the sphere that all receiver players should be within.
+     * @param except  a player to exclude from the receivers, usually the player that caused the payload to be sent.
+     * @param context the context to send.
+     * @param payload the payload to send.
+     */
+    public void sendPlayToNearby(@NotNull ServerWorld world, @NotNull Vec3d pos, double radius,
+                                 @Nullable ServerPlayerEntity except, @NotNull C context, @NotNull P payload) {
+        if (!(radius >= 0.0)) throw new IllegalArgumentException("Radius must be non-negative, but was " + radius);
+        KNetPlatform.INSTANCE.sendPlayToNearby(world, pos, radius, except,
+            () -> maybeCompress(payload(context, payload)));
+    }
+
+    private CustomPayload maybeCompress(CustomPayload payload) {
+        return compression == null ? payload : compression.compress(payload);
     }
 
     private Payload payload(C context, P payload) {
@@ -279,6 +355,16 @@ public class ContextualChannel<C, P> implements Channel {
         return clientHandler != null;
     }
 
+    @Override
+    public int getInternCapacity() {
+        return internCapacity;
+    }
+
+    @Override
+    public @Nullable ChannelCompression getCompression() {
+        return compression;
+    }
+
     private class Payload implements NetPayload {
         private final Object contextPayload;
         private final P payload;
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.channel.context;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.floats.FloatArrayList;
+import it.unimi.dsi.fastutil.floats.FloatList;
+
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * A codec for {@code float} values that never boxes them.
+ * <p>
+ * Composing this codec, with {@link #listOf()}, {@link #arrayOf()} or {@link #xmap(Float2Object, ToFloat)}, reads
+ * and writes the values directly instead of going through {@link Float}, like a {@code PayloadCodec<Float>} would.
+ *
+ * @param encoder the encoder for the values.
+ * @param decoder the decoder for the values.
+ */
+public record FloatPayloadCodec(@NotNull Encoder encoder, @NotNull Decoder decoder) {
+    /**
+     * Codec for {@code float}s written as 4 fixed bytes.
+     */
+    public static final FloatPayloadCodec FIXED =
+        new FloatPayloadCodec(NetByteBuf::writeFloat, NetByteBuf::readFloat);
+
+    /**
+     * Creates a codec for {@code float}s quantized to a fixed number of bits over a range.
+     *
+     * @param min  the lowest value that can be written.
+     * @param max  the highest value that can be written.
+     * @param bits the number of bits to write each value with, between 1 and 32.
+     * @return a codec writing quantized values.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     * @see NetByteBuf#writeQuantizedFloat(float, float, float, int)
+     */
+    public static FloatPayloadCodec quantized(float min, float max, int bits) throws IllegalArgumentException {
+        if (bits < 1 || bits > 32) throw new IllegalArgumentException("Bits must be between 1 and 32 but was " + bits);
+        if (!(min < max)) {
+            throw new IllegalArgumentException("Max (" + max + ") must be greater than min (" + min + ")");
+        }
+        return new FloatPayloadCodec((buf, value) -> buf.writeQuantizedFloat(value, min, max, bits),
+            buf -> buf.readQuantizedFloat(min, max, bits));
+    }
+
+    /**
+     * Creates a codec for objects that are written as a {@code float} using this codec.
+     *
+     * @param to   converts read values into objects.
+     * @param from converts objects into values to write.
+     * @param <T>  the type of object.
+     * @return a codec for the objects.
+     */
+    public <T> PayloadCodec<T> xmap(@NotNull Float2Object<? extends T> to, @NotNull ToFloat<? super T> from) {
+        return new PayloadCodec<>((buf, value) -> encoder.encode(buf, from.applyAsFloat(value)),
+            buf -> to.apply(decoder.decode(buf)));
+    }
+
+    /**
+     * Gets a boxing version of this codec, for use where a {@link PayloadCodec} is required.
+     *
+     * @return a codec for boxed values.
+     */
+    public PayloadCodec<Float> boxed() {
+        return new PayloadCodec<>(encoder::encode, decoder::decode);
+    }
+
+    /**
+     * Creates a codec for lists of values, written as their length followed by each value.
+     *
+     * @return a codec for lists of values.
+     */
+    public PayloadCodec<FloatList> listOf() {
+        return new PayloadCodec<>((buf, list) -> {
+            int size = list.size();
+            buf.writeVarUnsignedInt(size);
+            for (int i = 0; i < size; i++) {
+                encoder.encode(buf, list.getFloat(i));
+            }
+        }, buf -> PayloadCodec.<FloatList>readCollection(buf, FloatArrayList::new,
+            (b, list) -> list.add(decoder.decode(b))));
+    }
+
+    /**
+     * Creates a codec for arrays of values, written the same as {@link #listOf()}.
+     *
+     * @return a codec for arrays of values.
+     */
+    public PayloadCodec<float[]> arrayOf() {
+        // the array is only allocated at its full size once enough values have actually been read
+        return listOf().xmap(list -> list instanceof FloatArrayList arrayList &&
+                arrayList.elements().length == list.size() ? arrayList.elements() : list.toFloatArray(),
+            FloatArrayList::wrap);
+    }
+
+    /**
+     * Writes a {@code float} value.
+     */
+    @FunctionalInterface
+    public interface Encoder {
+        /**
+         * Writes a value to the buffer.
+         *
+         * @param buf   the buffer to write to.
+         * @param value the value to write.
+         */
+        void encode(NetByteBuf buf, float value);
+    }
+
+    /**
+     * Reads a {@code float} value.
+     */
+    @FunctionalInterface
+    public interface Decoder {
+        /**
+         * Reads a value from the buffer.
+         *
+         * @param buf the buffer to read from.
+         * @return the value read.
+         */
+        float decode(NetByteBuf buf);
+    }
+
+    /**
+     * A function from a {@code float} to an object.
+     *
+     * @param <T> the type of object.
+     */
+    @FunctionalInterface
+    public interface Float2Object<T> {
+        /**
+         * Applies this function.
+         *
+         * @param value the value to convert.
+         * @return the converted object.
+         */
+        T apply(float value);
+    }
+
+    /**
+     * A function from an object to a {@code float}.
+     *
+     * @param <T> the type of object.
+     */
+    @FunctionalInterface
+    public interface ToFloat<T> {
+        /**
+         * Applies this function.
+         *
+         * @param value the object to convert.
+         * @return the converted value.
+         */
+        float applyAsFloat(T value);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.channel.context;
+
+import java.util.function.IntFunction;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ToIntFunction;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMaps;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * A codec for {@code int} values that never boxes them.
+ * <p>
+ * Composing this codec, with {@link #listOf()}, {@link #arrayOf()}, {@link #mapOf(PayloadCodec)} or
+ * {@link #xmap(IntFunction, ToIntFunction)}, reads and writes the values directly instead of going through
+ * {@link Integer}, like a {@code PayloadCodec<Integer>} would.
+ *
+ * @param encoder writes a value to a buffer.
+ * @param decoder reads a value from a buffer.
+ */
+public record IntPayloadCodec(@NotNull ObjIntConsumer<NetByteBuf> encoder, @NotNull ToIntFunction<NetByteBuf> decoder) {
+    /**
+     * Codec for {@code int}s written as 4 fixed bytes.
+     */
+    public static final IntPayloadCodec FIXED = new IntPayloadCodec(NetByteBuf::writeInt, NetByteBuf::readInt);
+
+    /**
+     * Codec for {@code int}s written as signed var-ints.
+     *
+     * @see NetByteBuf#writeVarInt(int)
+     */
+    public static final IntPayloadCodec VAR_INT = new IntPayloadCodec(NetByteBuf::writeVarInt, NetByteBuf::readVarInt);
+
+    /**
+     * Codec for {@code int}s written as unsigned var-ints, for values that are never negative.
+     *
+     * @see NetByteBuf#writeVarUnsignedInt(int)
+     */
+    public static final IntPayloadCodec VAR_UNSIGNED_INT =
+        new IntPayloadCodec(NetByteBuf::writeVarUnsignedInt, NetByteBuf::readVarUnsignedInt);
+
+    /**
+     * Creates a codec for {@code int}s written using a fixed number of bits.
+     * <p>
+     * Values are read back unsigned, so they must be within {@code 0} to {@code 2^bits - 1}.
+     *
+     * @param bits the number of bits to write, between 1 and 32.
+     * @return a codec writing the given number of bits.
+     * @throws IllegalArgumentException if bits is out of range.
+     * @see NetByteBuf#writeFixedBits(int, int)
+     */
+    public static IntPayloadCodec fixedBits(int bits) throws IllegalArgumentException {
+        if (bits < 1 || bits > 32) throw new IllegalArgumentException("Bits must be between 1 and 32 but was " + bits);
+        return new IntPayloadCodec((buf, value) -> buf.writeFixedBits(value, bits), buf -> buf.readFixedBits(bits));
+    }
+
+    /**
+     * Creates a codec for objects that are written as an {@code int} using this codec.
+     *
+     * @param to   converts read values into objects.
+     * @param from converts objects into values to write.
+     * @param <T>  the type of object.
+     * @return a codec for the objects.
+     */
+    public <T> PayloadCodec<T> xmap(@NotNull IntFunction<? extends T> to, @NotNull ToIntFunction<? super T> from) {
+        return new PayloadCodec<>((buf, value) -> encoder.accept(buf, from.applyAsInt(value)),
+            buf -> to.apply(decoder.applyAsInt(buf)));
+    }
+
+    /**
+     * Gets a boxing version of this codec, for use where a {@link PayloadCodec} is required.
+     *
+     * @return a codec for boxed values.
+     */
+    public PayloadCodec<Integer> boxed() {
+        return new PayloadCodec<>(encoder::accept, decoder::applyAsInt);
+    }
+
+    /**
+     * Creates a codec for lists of values, written as their length followed by each value.
+     *
+     * @return a codec for lists of values.
+     */
+    public PayloadCodec<IntList> listOf() {
+        return new PayloadCodec<>((buf, list) -> {
+            int size = list.size();
+            buf.writeVarUnsignedInt(size);
+            for (int i = 0; i < size; i++) {
+                encoder.accept(buf, list.getInt(i));
+            }
+        }, buf -> PayloadCodec.<IntList>readCollection(buf, IntArrayList::new,
+            (b, list) -> list.add(decoder.applyAsInt(b))));
+    }
+
+    /**
+     * Creates a codec for arrays of values, written the same as {@link #listOf()}.
+     *
+     * @return a codec for arrays of values.
+     */
+    public PayloadCodec<int[]> arrayOf() {
+        // the array is only allocated at its full size once enough values have actually been read
+        return listOf().xmap(list -> list instanceof IntArrayList arrayList &&
+                arrayList.elements().length == list.size() ? arrayList.elements() : list.toIntArray(),
+            IntArrayList::wrap);
+    }
+
+    /**
+     * Creates a codec for maps keyed by values of this codec, written as their size followed by each key and value.
+     *
+     * @param valueCodec the codec for the map's values.
+     * @param <V>        the type of the map's values.
+     * @return a codec for maps.
+     */
+    public <V> PayloadCodec<Int2ObjectMap<V>> mapOf(@NotNull PayloadCodec<V> valueCodec) {
+        return new PayloadCodec<>((buf, map) -> {
+            buf.writeVarUnsignedInt(map.size());
+            for (Int2ObjectMap.Entry<V> entry : Int2ObjectMaps.fastIterable(map)) {
+                encoder.accept(buf, entry.getIntKey());
+                valueCodec.encoder().accept(buf, entry.getValue());
+            }
+        }, buf -> PayloadCodec.<Int2ObjectMap<V>>readCollection(buf, Int2ObjectOpenHashMap::new,
+            (b, map) -> map.put(decoder.applyAsInt(b), valueCodec.decoder().apply(b))));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.channel.context;
+
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+import java.util.function.ToLongFunction;
+
+import org.jetbrains.annotations.NotNull;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMaps;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * A codec for {@code long} values that never boxes them.
+ * <p>
+ * Composing this codec, with {@link #listOf()}, {@link #arrayOf()}, {@link #mapOf(PayloadCodec)} or
+ * {@link #xmap(LongFunction, ToLongFunction)}, reads and writes the values directly instead of going through
+ * {@link Long}, like a {@code PayloadCodec<Long>} would.
+ *
+ * @param encoder writes a value to a buffer.
+ * @param decoder reads a value from a buffer.
+ */
+public record LongPayloadCodec(@NotNull ObjLongConsumer<NetByteBuf> encoder,
+                               @NotNull ToLongFunction<NetByteBuf> decoder) {
+    /**
+     * Codec for {@code long}s written as 8 fixed bytes.
+     */
+    public static final LongPayloadCodec FIXED = new LongPayloadCodec(NetByteBuf::writeLong, NetByteBuf::readLong);
+
+    /**
+     * Codec for {@code long}s written as signed var-longs.
+     *
+     * @see NetByteBuf#writeVarLong(long)
+     */
+    public static final LongPayloadCodec VAR_LONG =
+        new LongPayloadCodec(NetByteBuf::writeVarLong, NetByteBuf::readVarLong);
+
+    /**
+     * Codec for {@code long}s written as unsigned var-longs, for values that are never negative.
+     *
+     * @see NetByteBuf#writeVarUnsignedLong(long)
+     */
+    public static final LongPayloadCodec VAR_UNSIGNED_LONG =
+        new LongPayloadCodec(NetByteBuf::writeVarUnsignedLong, NetByteBuf::readVarUnsignedLong);
+
+    /**
+     * Creates a codec for {@code long}s written using a fixed number of bits.
+     * <p>
+     * Values are read back unsigned, so they must be within {@code 0} to {@code 2^bits - 1}.
+     *
+     * @param bits the number of bits to write, between 1 and 64.
+     * @return a codec writing the given number of bits.
+     * @throws IllegalArgumentException if bits is out of range.
+     * @see NetByteBuf#writeFixedBits(long, int)
+     */
+    public static LongPayloadCodec fixedBits(int bits) throws IllegalArgumentException {
+        if (bits < 1 || bits > 64) throw new IllegalArgumentException("Bits must be between 1 and 64 but was " + bits);
+        return new LongPayloadCodec((buf, value) -> buf.writeFixedBits(value, bits),
+            buf -> buf.readFixedBitsLong(bits));
+    }
+
+    /**
+     * Creates a codec for objects that are written as a {@code long} using this codec.
+     *
+     * @param to   converts read values into objects.
+     * @param from converts objects into values to write.
+     * @param <T>  the type of object.
+     * @return a codec for the objects.
+     */
+    public <T> PayloadCodec<T> xmap(@NotNull LongFunction<? extends T> to, @NotNull ToLongFunction<? super T> from) {
+        return new PayloadCodec<>((buf, value) -> encoder.accept(buf, from.applyAsLong(value)),
+            buf -> to.apply(decoder.applyAsLong(buf)));
+    }
+
+    /**
+     * Gets a boxing version of this codec, for use where a {@link PayloadCodec} is required.
+     *
+     * @return a codec for boxed values.
+     */
+    public PayloadCodec<Long> boxed() {
+        return new PayloadCodec<>(encoder::accept, decoder::applyAsLong);
+    }
+
+    /**
+     * Creates a codec for lists of values, written as their length followed by each value.
+     *
+     * @return a codec for lists of values.
+     */
+    public PayloadCodec<LongList> listOf() {
+        return new PayloadCodec<>((buf, list) -> {
+            int size = list.size();
+            buf.writeVarUnsignedInt(size);
+            for (int i = 0; i < size; i++) {
+                encoder.accept(buf, list.getLong(i));
+            }
+        }, buf -> PayloadCodec.<LongList>readCollection(buf, LongArrayList::new,
+            (b, list) -> list.add(decoder.applyAsLong(b))));
+    }
+
+    /**
+     * Creates a codec for arrays of values, written the same as {@link #listOf()}.
+     *
+     * @return a codec for arrays of values.
+     */
+    public PayloadCodec<long[]> arrayOf() {
+        // the array is only allocated at its full size once enough values have actually been read
+        return listOf().xmap(list -> list instanceof LongArrayList arrayList &&
+                arrayList.elements().length == list.size() ? arrayList.elements() : list.toLongArray(),
+            LongArrayList::wrap);
+    }
+
+    /**
+     * Creates a codec for maps keyed by values of this codec, written as their size followed by each key and value.
+     *
+     * @param valueCodec the codec for the map's values.
+     * @param <V>        the type of the map's values.
+     * @return a codec for maps.
+     */
+    public <V> PayloadCodec<Long2ObjectMap<V>> mapOf(@NotNull PayloadCodec<V> valueCodec) {
+        return new PayloadCodec<>((buf, map) -> {
+            buf.writeVarUnsignedInt(map.size());
+            for (Long2ObjectMap.Entry<V> entry : Long2ObjectMaps.fastIterable(map)) {
+                encoder.accept(buf, entry.getLongKey());
+                valueCodec.encoder().accept(buf, entry.getValue());
+            }
+        }, buf -> PayloadCodec.<Long2ObjectMap<V>>readCollection(buf, Long2ObjectOpenHashMap::new,
+            (b, map) -> map.put(decoder.applyAsLong(b), valueCodec.decoder().apply(b))));
+    }
+}
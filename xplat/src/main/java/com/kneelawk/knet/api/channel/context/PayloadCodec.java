@@ -25,9 +25,47 @@
 
 package com.kneelawk.knet.api.channel.context;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
 import org.jetbrains.annotations.NotNull;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+import it.unimi.dsi.fastutil.ints.IntSortedSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+import io.netty.handler.codec.DecoderException;
+
+import com.mojang.datafixers.util.Either;
+import com.mojang.datafixers.util.Function3;
+import com.mojang.datafixers.util.Function4;
+import com.mojang.datafixers.util.Function5;
+import com.mojang.datafixers.util.Function6;
+import com.mojang.serialization.Codec;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.fluid.Fluid;
+import net.minecraft.item.Item;
+import net.minecraft.registry.Registries;
+import net.minecraft.util.collection.IndexedIterable;
+
+import com.kneelawk.knet.api.util.EnumCodec;
 import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.api.util.Palette;
+import com.kneelawk.knet.impl.DfuPayloadCodecs;
 
 /**
  * A codec for a contextual payload.
@@ -38,4 +76,667 @@ import com.kneelawk.knet.api.util.NetByteBuf;
  */
 public record PayloadCodec<P>(@NotNull NetByteBuf.NetWriter<P> encoder,
                               @NotNull NetByteBuf.NetReader<P> decoder) {
+    /**
+     * Codec for lists of integers, using {@link NetByteBuf#writeIntSequence(int[], int, int)} so that sorted or
+     * clustered lists are written compactly.
+     */
+    public static final PayloadCodec<IntList> INT_LIST = new PayloadCodec<>((buf, list) -> {
+        int size = list.size();
+        buf.writeVarUnsignedInt(size);
+        buf.writeIntSequence(list instanceof IntArrayList arrayList ? arrayList.elements() : list.toIntArray(), 0,
+            size);
+    }, buf -> {
+        int size = buf.checkSequenceLength(buf.readVarUnsignedInt());
+        return IntArrayList.wrap(buf.readIntSequence(new int[size], 0, size));
+    });
+
+    /**
+     * Codec for lists of long integers, using {@link NetByteBuf#writeLongSequence(long[], int, int)} so that sorted or
+     * clustered lists, like lists of {@link net.minecraft.util.math.BlockPos#asLong()}, are written compactly.
+     */
+    public static final PayloadCodec<LongList> LONG_LIST = new PayloadCodec<>((buf, list) -> {
+        int size = list.size();
+        buf.writeVarUnsignedInt(size);
+        buf.writeLongSequence(list instanceof LongArrayList arrayList ? arrayList.elements() : list.toLongArray(), 0,
+            size);
+    }, buf -> {
+        int size = buf.checkSequenceLength(buf.readVarUnsignedInt());
+        return LongArrayList.wrap(buf.readLongSequence(new long[size], 0, size));
+    });
+
+    /**
+     * Codec for sorted sets of integers, like sets of entity ids.
+     * <p>
+     * Sets are always decoded as an {@link IntRBTreeSet} using natural ordering.
+     */
+    public static final PayloadCodec<IntSortedSet> INT_SORTED_SET = new PayloadCodec<>((buf, set) -> {
+        int size = set.size();
+        buf.writeVarUnsignedInt(size);
+        buf.writeIntSequence(set.toIntArray(), 0, size);
+    }, buf -> {
+        int size = buf.checkSequenceLength(buf.readVarUnsignedInt());
+        return new IntRBTreeSet(buf.readIntSequence(new int[size], 0, size));
+    });
+
+    /**
+     * Codec for {@link Block}s, using their raw ids.
+     */
+    public static final PayloadCodec<Block> BLOCK = registryValue(Registries.BLOCK);
+
+    /**
+     * Codec for {@link BlockState}s, using their raw ids from {@link Block#STATE_IDS}.
+     * <p>
+     * Payloads containing many repeated block states may want to use {@link #paletteList(PayloadCodec)} instead.
+     */
+    public static final PayloadCodec<BlockState> BLOCK_STATE = registryValue(Block.STATE_IDS);
+
+    /**
+     * Codec for {@link Item}s, using their raw ids.
+     */
+    public static final PayloadCodec<Item> ITEM = registryValue(Registries.ITEM);
+
+    /**
+     * Codec for {@link Fluid}s, using their raw ids.
+     */
+    public static final PayloadCodec<Fluid> FLUID = registryValue(Registries.FLUID);
+
+    /**
+     * The default maximum length of decoded {@link #paletteList(PayloadCodec)} and {@link #enumList(Class)} lists that
+     * hold a single repeated value.
+     */
+    public static final int DEFAULT_MAX_RUN_LENGTH = 1 << 16;
+
+    /**
+     * The most elements in a row that a decoded collection may contain without the reader index moving, for
+     * collections of values that take up no space at all, like those of {@link #unit(Object)}.
+     */
+    private static final int MAX_EMPTY_ELEMENTS = 64;
+
+    /**
+     * Creates a codec for values of a registry or id list, using their raw ids.
+     * <p>
+     * Raw ids are written as var-ints, which is much smaller than writing each value's identifier. Raw ids are kept in
+     * sync between client and server by the platform.
+     *
+     * @param registry the registry or id list to look up values in.
+     * @param <T>      the type of value.
+     * @return a codec for the registry's values.
+     */
+    public static <T> PayloadCodec<T> registryValue(@NotNull IndexedIterable<T> registry) {
+        return new PayloadCodec<>((buf, value) -> buf.writeRegistryValue(registry, value), buf -> {
+            T value = buf.readRegistryValue(registry);
+            if (value == null) throw new DecoderException("Read an unknown raw id for registry " + registry);
+            return value;
+        });
+    }
+
+    /**
+     * Creates a codec for lists of values that are likely to repeat, like the block states of a region.
+     * <p>
+     * Each distinct value is written once into a {@link Palette}, and the list itself is written as palette keys using
+     * {@link NetByteBuf#writeEntropyCoded(int[], int, int, int)}, so lists dominated by a few values, like mostly-air
+     * regions, take up close to their entropy.
+     * <p>
+     * Decoded lists of a single repeated value are limited to {@link #DEFAULT_MAX_RUN_LENGTH} elements.
+     *
+     * @param valueCodec the codec for the distinct values.
+     * @param <T>        the type of value.
+     * @return a codec for lists of values.
+     * @see #paletteList(PayloadCodec, int)
+     */
+    public static <T> PayloadCodec<List<T>> paletteList(@NotNull PayloadCodec<T> valueCodec) {
+        return paletteList(valueCodec, DEFAULT_MAX_RUN_LENGTH);
+    }
+
+    /**
+     * Creates a codec for lists of values that are likely to repeat, like the block states of a region.
+     * <p>
+     * A list of a single repeated value is written without any space per element, so its decoded length can't be
+     * checked against the size of the payload. Such lists are limited to {@code maxRunLength} elements instead. Other
+     * lists are limited by the size of the payload.
+     *
+     * @param valueCodec   the codec for the distinct values.
+     * @param maxRunLength the maximum length of decoded lists that hold a single repeated value.
+     * @param <T>          the type of value.
+     * @return a codec for lists of values.
+     * @throws IllegalArgumentException if {@code maxRunLength} is negative.
+     * @see #paletteList(PayloadCodec)
+     */
+    public static <T> PayloadCodec<List<T>> paletteList(@NotNull PayloadCodec<T> valueCodec, int maxRunLength)
+        throws IllegalArgumentException {
+        checkMaxRunLength(maxRunLength);
+        return new PayloadCodec<>((buf, list) -> {
+            int size = list.size();
+            Palette<T> palette = new Palette<>();
+            int[] keys = new int[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = palette.keyFor(list.get(i));
+            }
+
+            palette.encode(buf, valueCodec.encoder());
+            buf.writeVarUnsignedInt(size);
+            if (size > 0) buf.writeEntropyCoded(keys, 0, size, palette.size());
+        }, buf -> {
+            Palette<T> palette = Palette.decode(buf, valueCodec.decoder());
+            int size = readSymbolListLength(buf, maxRunLength);
+            if (size == 0) return new ArrayList<>();
+            if (palette.size() == 0) {
+                throw new DecoderException("Read a non-empty palette list with an empty palette");
+            }
+            if (palette.size() > NetByteBuf.MAX_ENTROPY_ALPHABET_SIZE) {
+                throw new DecoderException("Read a palette too large for a palette list: " + palette.size());
+            }
+
+            int[] keys = buf.readEntropyCoded(new int[size], 0, size, palette.size());
+            List<T> list = new ArrayList<>(size);
+            for (int key : keys) {
+                T value = palette.get(key);
+                if (value == null) throw new DecoderException("Read an unknown palette key: " + key);
+                list.add(value);
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Creates a codec for lists of enum constants, using
+     * {@link NetByteBuf#writeEntropyCoded(int[], int, int, int)} so that lists dominated by a few constants, like
+     * mostly-idle machine states, take up close to their entropy.
+     * <p>
+     * Decoded lists of a single repeated constant are limited to {@link #DEFAULT_MAX_RUN_LENGTH} elements.
+     *
+     * @param enumClass the class of the enum.
+     * @param <E>       the type of the enum.
+     * @return a codec for lists of enum constants.
+     * @see #enumList(Class, int)
+     */
+    public static <E extends Enum<E>> PayloadCodec<List<E>> enumList(@NotNull Class<E> enumClass) {
+        return enumList(enumClass, DEFAULT_MAX_RUN_LENGTH);
+    }
+
+    /**
+     * Creates a codec for lists of enum constants, using
+     * {@link NetByteBuf#writeEntropyCoded(int[], int, int, int)}.
+     * <p>
+     * A list of a single repeated constant is written without any space per element, so its decoded length can't be
+     * checked against the size of the payload. Such lists are limited to {@code maxRunLength} elements instead. Other
+     * lists are limited by the size of the payload.
+     *
+     * @param enumClass    the class of the enum.
+     * @param maxRunLength the maximum length of decoded lists that hold a single repeated constant.
+     * @param <E>          the type of the enum.
+     * @return a codec for lists of enum constants.
+     * @throws IllegalArgumentException if {@code maxRunLength} is negative.
+     * @see #enumList(Class)
+     */
+    public static <E extends Enum<E>> PayloadCodec<List<E>> enumList(@NotNull Class<E> enumClass, int maxRunLength)
+        throws IllegalArgumentException {
+        checkMaxRunLength(maxRunLength);
+        EnumCodec<E> codec = EnumCodec.of(enumClass);
+        return new PayloadCodec<>((buf, list) -> {
+            int size = list.size();
+            int[] ordinals = new int[size];
+            for (int i = 0; i < size; i++) {
+                ordinals[i] = list.get(i).ordinal();
+            }
+
+            buf.writeVarUnsignedInt(size);
+            if (size > 0) buf.writeEntropyCoded(ordinals, 0, size, codec.size());
+        }, buf -> {
+            int size = readSymbolListLength(buf, maxRunLength);
+            if (size == 0) return new ArrayList<>();
+
+            int[] ordinals = buf.readEntropyCoded(new int[size], 0, size, codec.size());
+            List<E> list = new ArrayList<>(size);
+            for (int ordinal : ordinals) {
+                list.add(codec.get(ordinal));
+            }
+            return list;
+        });
+    }
+
+    /**
+     * Creates a codec for sets of enum constants, written as a fixed-width bitmask with one bit per constant.
+     *
+     * @param enumClass the class of the enum.
+     * @param <E>       the type of the enum.
+     * @return a codec for sets of enum constants.
+     * @see EnumCodec#writeSet(NetByteBuf, java.util.Set)
+     */
+    public static <E extends Enum<E>> PayloadCodec<EnumSet<E>> enumSet(@NotNull Class<E> enumClass) {
+        EnumCodec<E> codec = EnumCodec.of(enumClass);
+        return new PayloadCodec<>(codec::writeSet, codec::readSet);
+    }
+
+    /**
+     * Creates a codec for maps keyed by enum constants, written as a bitmask of present keys followed by their values.
+     * <p>
+     * Payloads holding a primitive per constant can avoid boxing by using
+     * {@link EnumCodec#writeInts(NetByteBuf, int[])} or {@link EnumCodec#writeLongs(NetByteBuf, long[])} directly.
+     *
+     * @param enumClass  the class of the enum.
+     * @param valueCodec the codec for the map's values.
+     * @param <E>        the type of the enum.
+     * @param <V>        the type of the map's values.
+     * @return a codec for maps keyed by enum constants.
+     */
+    public static <E extends Enum<E>, V> PayloadCodec<EnumMap<E, V>> enumMap(@NotNull Class<E> enumClass,
+                                                                              @NotNull PayloadCodec<V> valueCodec) {
+        EnumCodec<E> codec = EnumCodec.of(enumClass);
+        return new PayloadCodec<>((buf, map) -> codec.writeMap(buf, map, valueCodec.encoder()),
+            buf -> codec.readMap(buf, valueCodec.decoder()));
+    }
+
+    /**
+     * Creates a codec from a DataFixerUpper {@link Codec}, so that objects that already have one don't need a second,
+     * hand-written payload codec.
+     * <p>
+     * Codecs are run against KNet's own {@link com.mojang.serialization.DynamicOps}, whose values are written
+     * straight to the buffer with a small type tag each, so no NBT is built or serialized. Integers are written as
+     * var-ints and booleans as 4-bit tags.
+     * <p>
+     * Codecs built from a {@link com.mojang.serialization.MapCodec}, like those made with
+     * {@link com.mojang.serialization.codecs.RecordCodecBuilder#create(Function)}, are compiled into a positional
+     * encoding. Their field names are looked up once, and each field is written in order behind a presence bit, so no
+     * field names are sent.
+     * <p>
+     * Codecs that need registry access, or that only work with a specific {@code DynamicOps}, are not supported.
+     * Created codecs are cached per codec instance.
+     *
+     * @param codec the codec to write values with.
+     * @param <T>   the type of value.
+     * @return a payload codec for the values.
+     */
+    public static <T> PayloadCodec<T> fromCodec(@NotNull Codec<T> codec) {
+        return DfuPayloadCodecs.fromCodec(codec);
+    }
+
+    /**
+     * Creates a codec that always decodes the given value and writes nothing.
+     * <p>
+     * This is mostly useful for the values of {@link #dispatch(Function, Function)} that carry no data. As its values
+     * take up no space, collections of them can't be decoded if they are longer than a few dozen elements.
+     *
+     * @param value the value to decode.
+     * @param <T>   the type of value.
+     * @return a codec for the single value.
+     */
+    public static <T> PayloadCodec<T> unit(T value) {
+        return new PayloadCodec<>((buf, v) -> {}, buf -> value);
+    }
+
+    /**
+     * Creates a codec for maps, written as their size followed by each key and value.
+     * <p>
+     * Maps are always decoded as an {@link Object2ObjectOpenHashMap}.
+     *
+     * @param keyCodec   the codec for the map's keys.
+     * @param valueCodec the codec for the map's values.
+     * @param <K>        the type of the map's keys.
+     * @param <V>        the type of the map's values.
+     * @return a codec for maps.
+     */
+    public static <K, V> PayloadCodec<Map<K, V>> mapOf(@NotNull PayloadCodec<K> keyCodec,
+                                                       @NotNull PayloadCodec<V> valueCodec) {
+        return new PayloadCodec<>((buf, map) -> {
+            buf.writeVarUnsignedInt(map.size());
+            for (Map.Entry<K, V> entry : map.entrySet()) {
+                keyCodec.encoder.accept(buf, entry.getKey());
+                valueCodec.encoder.accept(buf, entry.getValue());
+            }
+        }, buf -> PayloadCodec.<Map<K, V>>readCollection(buf, Object2ObjectOpenHashMap::new,
+            (b, map) -> map.put(keyCodec.decoder.apply(b), valueCodec.decoder.apply(b))));
+    }
+
+    /**
+     * Creates a codec for values that are one of two types, written as a single bit followed by the value.
+     *
+     * @param leftCodec  the codec for left values.
+     * @param rightCodec the codec for right values.
+     * @param <L>        the type of left values.
+     * @param <R>        the type of right values.
+     * @return a codec for either value.
+     */
+    public static <L, R> PayloadCodec<Either<L, R>> either(@NotNull PayloadCodec<L> leftCodec,
+                                                           @NotNull PayloadCodec<R> rightCodec) {
+        return new PayloadCodec<>((buf, either) -> either.ifLeft(left -> {
+            buf.writeBoolean(false);
+            leftCodec.encoder.accept(buf, left);
+        }).ifRight(right -> {
+            buf.writeBoolean(true);
+            rightCodec.encoder.accept(buf, right);
+        }), buf -> buf.readBoolean() ? Either.right(rightCodec.decoder.apply(buf)) :
+            Either.left(leftCodec.decoder.apply(buf)));
+    }
+
+    /**
+     * Creates a codec for values made of 2 parts, written one after the other.
+     *
+     * @param codecA      the codec for the first part.
+     * @param getterA     gets the first part of a value.
+     * @param codecB      the codec for the second part.
+     * @param getterB     gets the second part of a value.
+     * @param constructor creates a value from its parts.
+     * @param <P>         the type of value.
+     * @param <A>         the type of the first part.
+     * @param <B>         the type of the second part.
+     * @return a codec for the values.
+     */
+    public static <P, A, B> PayloadCodec<P> tuple(
+        @NotNull PayloadCodec<A> codecA, @NotNull Function<? super P, ? extends A> getterA,
+        @NotNull PayloadCodec<B> codecB, @NotNull Function<? super P, ? extends B> getterB,
+        @NotNull BiFunction<? super A, ? super B, ? extends P> constructor) {
+        return new PayloadCodec<>((buf, value) -> {
+            codecA.encoder.accept(buf, getterA.apply(value));
+            codecB.encoder.accept(buf, getterB.apply(value));
+        }, buf -> {
+            A a = codecA.decoder.apply(buf);
+            B b = codecB.decoder.apply(buf);
+            return constructor.apply(a, b);
+        });
+    }
+
+    /**
+     * Creates a codec for values made of 3 parts, written one after the other.
+     *
+     * @param codecA      the codec for the first part.
+     * @param getterA     gets the first part of a value.
+     * @param codecB      the codec for the second part.
+     * @param getterB     gets the second part of a value.
+     * @param codecC      the codec for the third part.
+     * @param getterC     gets the third part of a value.
+     * @param constructor creates a value from its parts.
+     * @param <P>         the type of value.
+     * @param <A>         the type of the first part.
+     * @param <B>         the type of the second part.
+     * @param <C>         the type of the third part.
+     * @return a codec for the values.
+     */
+    public static <P, A, B, C> PayloadCodec<P> tuple(
+        @NotNull PayloadCodec<A> codecA, @NotNull Function<? super P, ? extends A> getterA,
+        @NotNull PayloadCodec<B> codecB, @NotNull Function<? super P, ? extends B> getterB,
+        @NotNull PayloadCodec<C> codecC, @NotNull Function<? super P, ? extends C> getterC,
+        @NotNull Function3<? super A, ? super B, ? super C, ? extends P> constructor) {
+        return new PayloadCodec<>((buf, value) -> {
+            codecA.encoder.accept(buf, getterA.apply(value));
+            codecB.encoder.accept(buf, getterB.apply(value));
+            codecC.encoder.accept(buf, getterC.apply(value));
+        }, buf -> {
+            A a = codecA.decoder.apply(buf);
+            B b = codecB.decoder.apply(buf);
+            C c = codecC.decoder.apply(buf);
+            return constructor.apply(a, b, c);
+        });
+    }
+
+    /**
+     * Creates a codec for values made of 4 parts, written one after the other.
+     *
+     * @param codecA      the codec for the first part.
+     * @param getterA     gets the first part of a value.
+     * @param codecB      the codec for the second part.
+     * @param getterB     gets the second part of a value.
+     * @param codecC      the codec for the third part.
+     * @param getterC     gets the third part of a value.
+     * @param codecD      the codec for the fourth part.
+     * @param getterD     gets the fourth part of a value.
+     * @param constructor creates a value from its parts.
+     * @param <P>         the type of value.
+     * @param <A>         the type of the first part.
+     * @param <B>         the type of the second part.
+     * @param <C>         the type of the third part.
+     * @param <D>         the type of the fourth part.
+     * @return a codec for the values.
+     */
+    public static <P, A, B, C, D> PayloadCodec<P> tuple(
+        @NotNull PayloadCodec<A> codecA, @NotNull Function<? super P, ? extends A> getterA,
+        @NotNull PayloadCodec<B> codecB, @NotNull Function<? super P, ? extends B> getterB,
+        @NotNull PayloadCodec<C> codecC, @NotNull Function<? super P, ? extends C> getterC,
+        @NotNull PayloadCodec<D> codecD, @NotNull Function<? super P, ? extends D> getterD,
+        @NotNull Function4<? super A, ? super B, ? super C, ? super D, ? extends P> constructor) {
+        return new PayloadCodec<>((buf, value) -> {
+            codecA.encoder.accept(buf, getterA.apply(value));
+            codecB.encoder.accept(buf, getterB.apply(value));
+            codecC.encoder.accept(buf, getterC.apply(value));
+            codecD.encoder.accept(buf, getterD.apply(value));
+        }, buf -> {
+            A a = codecA.decoder.apply(buf);
+            B b = codecB.decoder.apply(buf);
+            C c = codecC.decoder.apply(buf);
+            D d = codecD.decoder.apply(buf);
+            return constructor.apply(a, b, c, d);
+        });
+    }
+
+    /**
+     * Creates a codec for values made of 5 parts, written one after the other.
+     *
+     * @param codecA      the codec for the first part.
+     * @param getterA     gets the first part of a value.
+     * @param codecB      the codec for the second part.
+     * @param getterB     gets the second part of a value.
+     * @param codecC      the codec for the third part.
+     * @param getterC     gets the third part of a value.
+     * @param codecD      the codec for the fourth part.
+     * @param getterD     gets the fourth part of a value.
+     * @param codecE      the codec for the fifth part.
+     * @param getterE     gets the fifth part of a value.
+     * @param constructor creates a value from its parts.
+     * @param <P>         the type of value.
+     * @param <A>         the type of the first part.
+     * @param <B>         the type of the second part.
+     * @param <C>         the type of the third part.
+     * @param <D>         the type of the fourth part.
+     * @param <E>         the type of the fifth part.
+     * @return a codec for the values.
+     */
+    public static <P, A, B, C, D, E> PayloadCodec<P> tuple(
+        @NotNull PayloadCodec<A> codecA, @NotNull Function<? super P, ? extends A> getterA,
+        @NotNull PayloadCodec<B> codecB, @NotNull Function<? super P, ? extends B> getterB,
+        @NotNull PayloadCodec<C> codecC, @NotNull Function<? super P, ? extends C> getterC,
+        @NotNull PayloadCodec<D> codecD, @NotNull Function<? super P, ? extends D> getterD,
+        @NotNull PayloadCodec<E> codecE, @NotNull Function<? super P, ? extends E> getterE,
+        @NotNull Function5<? super A, ? super B, ? super C, ? super D, ? super E, ? extends P> constructor) {
+        return new PayloadCodec<>((buf, value) -> {
+            codecA.encoder.accept(buf, getterA.apply(value));
+            codecB.encoder.accept(buf, getterB.apply(value));
+            codecC.encoder.accept(buf, getterC.apply(value));
+            codecD.encoder.accept(buf, getterD.apply(value));
+            codecE.encoder.accept(buf, getterE.apply(value));
+        }, buf -> {
+            A a = codecA.decoder.apply(buf);
+            B b = codecB.decoder.apply(buf);
+            C c = codecC.decoder.apply(buf);
+            D d = codecD.decoder.apply(buf);
+            E e = codecE.decoder.apply(buf);
+            return constructor.apply(a, b, c, d, e);
+        });
+    }
+
+    /**
+     * Creates a codec for values made of 6 parts, written one after the other.
+     *
+     * @param codecA      the codec for the first part.
+     * @param getterA     gets the first part of a value.
+     * @param codecB      the codec for the second part.
+     * @param getterB     gets the second part of a value.
+     * @param codecC      the codec for the third part.
+     * @param getterC     gets the third part of a value.
+     * @param codecD      the codec for the fourth part.
+     * @param getterD     gets the fourth part of a value.
+     * @param codecE      the codec for the fifth part.
+     * @param getterE     gets the fifth part of a value.
+     * @param codecF      the codec for the sixth part.
+     * @param getterF     gets the sixth part of a value.
+     * @param constructor creates a value from its parts.
+     * @param <P>         the type of value.
+     * @param <A>         the type of the first part.
+     * @param <B>         the type of the second part.
+     * @param <C>         the type of the third part.
+     * @param <D>         the type of the fourth part.
+     * @param <E>         the type of the fifth part.
+     * @param <F>         the type of the sixth part.
+     * @return a codec for the values.
+     */
+    public static <P, A, B, C, D, E, F> PayloadCodec<P> tuple(
+        @NotNull PayloadCodec<A> codecA, @NotNull Function<? super P, ? extends A> getterA,
+        @NotNull PayloadCodec<B> codecB, @NotNull Function<? super P, ? extends B> getterB,
+        @NotNull PayloadCodec<C> codecC, @NotNull Function<? super P, ? extends C> getterC,
+        @NotNull PayloadCodec<D> codecD, @NotNull Function<? super P, ? extends D> getterD,
+        @NotNull PayloadCodec<E> codecE, @NotNull Function<? super P, ? extends E> getterE,
+        @NotNull PayloadCodec<F> codecF, @NotNull Function<? super P, ? extends F> getterF,
+        @NotNull Function6<? super A, ? super B, ? super C, ? super D, ? super E, ? super F, ? extends P> constructor) {
+        return new PayloadCodec<>((buf, value) -> {
+            codecA.encoder.accept(buf, getterA.apply(value));
+            codecB.encoder.accept(buf, getterB.apply(value));
+            codecC.encoder.accept(buf, getterC.apply(value));
+            codecD.encoder.accept(buf, getterD.apply(value));
+            codecE.encoder.accept(buf, getterE.apply(value));
+            codecF.encoder.accept(buf, getterF.apply(value));
+        }, buf -> {
+            A a = codecA.decoder.apply(buf);
+            B b = codecB.decoder.apply(buf);
+            C c = codecC.decoder.apply(buf);
+            D d = codecD.decoder.apply(buf);
+            E e = codecE.decoder.apply(buf);
+            F f = codecF.decoder.apply(buf);
+            return constructor.apply(a, b, c, d, e, f);
+        });
+    }
+
+    /**
+     * Creates a codec for values that are converted to and from the values of this codec.
+     *
+     * @param to   converts decoded values into the new type.
+     * @param from converts values of the new type into values to encode.
+     * @param <R>  the new type.
+     * @return a codec for the new type.
+     */
+    public <R> PayloadCodec<R> xmap(@NotNull Function<? super P, ? extends R> to,
+                                    @NotNull Function<? super R, ? extends P> from) {
+        return new PayloadCodec<>((buf, value) -> encoder.accept(buf, from.apply(value)),
+            buf -> to.apply(decoder.apply(buf)));
+    }
+
+    /**
+     * Creates a codec for lists of this codec's values, written as their length followed by each value.
+     * <p>
+     * Lists are always decoded as an {@link ArrayList}.
+     *
+     * @return a codec for lists.
+     */
+    public PayloadCodec<List<P>> listOf() {
+        return new PayloadCodec<>((buf, list) -> {
+            buf.writeVarUnsignedInt(list.size());
+            for (P value : list) {
+                encoder.accept(buf, value);
+            }
+        }, buf -> PayloadCodec.<List<P>>readCollection(buf, ArrayList::new,
+            (b, list) -> list.add(decoder.apply(b))));
+    }
+
+    /**
+     * Creates a codec for optional values, written as a single bit followed by the value if present.
+     *
+     * @return a codec for optional values.
+     * @see NetByteBuf#writeOptional(Optional, NetByteBuf.NetWriter)
+     */
+    public PayloadCodec<Optional<P>> optional() {
+        return new PayloadCodec<>((buf, value) -> buf.writeOptional(value, encoder), buf -> buf.readOptional(decoder));
+    }
+
+    /**
+     * Creates a codec for values whose encoding depends on a key, like their type, where the key is written first
+     * using this codec.
+     *
+     * @param keyGetter   gets the key of a value.
+     * @param codecGetter gets the codec for values with the given key.
+     * @param <R>         the type of value.
+     * @return a codec for the values.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> PayloadCodec<R> dispatch(@NotNull Function<? super R, ? extends P> keyGetter,
+                                        @NotNull Function<? super P, ? extends PayloadCodec<? extends R>> codecGetter) {
+        return new PayloadCodec<>((buf, value) -> {
+            P key = keyGetter.apply(value);
+            PayloadCodec<R> codec = (PayloadCodec<R>) codecGetter.apply(key);
+            if (codec == null) throw new IllegalArgumentException("No codec for dispatch key " + key);
+            encoder.accept(buf, key);
+            codec.encoder.accept(buf, value);
+        }, buf -> {
+            P key = decoder.apply(buf);
+            PayloadCodec<? extends R> codec = codecGetter.apply(key);
+            if (codec == null) throw new DecoderException("Read an unknown dispatch key " + key);
+            return codec.decoder.apply(buf);
+        });
+    }
+
+    /**
+     * Reads a collection written as its size followed by each element.
+     * <p>
+     * The collection is created with a capacity bounded by the readable bytes, so that a bad size can't cause a huge
+     * allocation. Collections whose elements take less than a byte each just grow past this as they are read.
+     *
+     * @param buf         the buffer to read from.
+     * @param create      creates an empty collection with the given initial capacity.
+     * @param readElement reads a single element and adds it to the collection.
+     * @throws DecoderException if the size is larger than the readable data could hold, or if too many elements in a
+     *                          row take up no space at all.
+     */
+    static <C> C readCollection(NetByteBuf buf, IntFunction<? extends C> create,
+                                BiConsumer<NetByteBuf, ? super C> readElement) throws DecoderException {
+        int size = readCollectionSize(buf);
+        C collection = create.apply(Math.min(size, buf.readableBytes()));
+
+        // Elements written by codecs like unit() take up no space, so a bad size would otherwise spin here for as long
+        // as it says without ever running out of data. Elements that take any space at all, even a single bit, can
+        // never leave the reader index where it was for this many elements in a row.
+        int emptyRun = 0;
+        int index = buf.readerIndex();
+        for (int i = 0; i < size; i++) {
+            readElement.accept(buf, collection);
+            int newIndex = buf.readerIndex();
+            if (newIndex != index) {
+                index = newIndex;
+                emptyRun = 0;
+            } else if (++emptyRun > MAX_EMPTY_ELEMENTS) {
+                throw new DecoderException("Read more than " + MAX_EMPTY_ELEMENTS + " collection elements in a row " +
+                    "that take up no space");
+            }
+        }
+        return collection;
+    }
+
+    /**
+     * Reads the size of a collection written as a var-uint, rejecting sizes that can't be valid.
+     * <p>
+     * Every element takes at least one bit, except for the few elements in a row that {@link #MAX_EMPTY_ELEMENTS}
+     * allows to take none, so sizes larger than the readable bits plus that can't be valid.
+     */
+    static int readCollectionSize(NetByteBuf buf) throws DecoderException {
+        int size = buf.readVarUnsignedInt();
+        // the extra 7 bits may be left in a partially read byte
+        if (size < 0 || size > buf.readableBytes() * 8L + 7 + MAX_EMPTY_ELEMENTS) {
+            throw new DecoderException("Read a collection size larger than the payload could hold: " + size);
+        }
+        return size;
+    }
+
+    private static void checkMaxRunLength(int maxRunLength) {
+        if (maxRunLength < 0) {
+            throw new IllegalArgumentException("Tried to use a negative max run length: " + maxRunLength);
+        }
+    }
+
+    /**
+     * Packed and Huffman-coded symbols take at least a bit each, but entropy-coded lists of a single repeated symbol
+     * take up no space per element, so only their length is checked against the max run length.
+     */
+    private static int readSymbolListLength(NetByteBuf buf, int maxRunLength) {
+        int size = buf.readVarUnsignedInt();
+        if (size < 0 || (size > buf.readableBytes() * 8L + 7 && size > maxRunLength)) {
+            throw new DecoderException("Read a symbol list length out of range: " + size);
+        }
+        return size;
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.codegen;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a record to have a {@link com.kneelawk.knet.api.channel.context.PayloadCodec} generated for it at compile time
+ * by the KNet annotation processor.
+ * <p>
+ * For a record {@code Foo}, the processor generates a class {@code FooCodec} in the same package (or
+ * {@code Outer_FooCodec} for a record nested in {@code Outer}) with static {@code write} and {@code read} methods and
+ * a {@code CODEC} field wrapping them. The generated methods write each component in declaration order with straight
+ * line calls to {@link com.kneelawk.knet.api.util.NetByteBuf} and use no reflection.
+ * <p>
+ * Components are written according to their type:
+ * <ul>
+ *     <li>Primitives are written with their fixed-size netty methods, or as selected by {@link VarInt},
+ *     {@link FixedBits} or {@link Quantized}. Booleans are written as single bits.</li>
+ *     <li>Strings, identifiers, UUIDs, enums and block positions use their {@code NetByteBuf} methods. Block positions
+ *     may be written relative to another component with {@link RelativeTo}.</li>
+ *     <li>Blocks, block states, items and fluids use their raw ids.</li>
+ *     <li>Other records annotated with {@code GenerateCodec} use their generated codec.</li>
+ *     <li>Other types use their {@code public static final PayloadCodec CODEC} field.</li>
+ *     <li>Lists of any of the above non-primitive types are written as a length followed by their elements, or using
+ *     {@link com.kneelawk.knet.api.channel.context.PayloadCodec#paletteList} when annotated with {@link Paletted}.</li>
+ * </ul>
+ * Components must not be null.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface GenerateCodec {
+}
@@ -0,0 +1,427 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.nbt.AbstractNbtNumber;
+import net.minecraft.nbt.NbtByte;
+import net.minecraft.nbt.NbtByteArray;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.NbtEnd;
+import net.minecraft.nbt.NbtIntArray;
+import net.minecraft.nbt.NbtList;
+import net.minecraft.nbt.NbtLongArray;
+import net.minecraft.nbt.NbtType;
+import net.minecraft.nbt.NbtTypes;
+import net.minecraft.nbt.scanner.NbtScanner;
+
+/**
+ * Streams NBT to and from a {@link NetByteBuf} in a compact form.
+ * <p>
+ * Compared to vanilla NBT, tag types take 4 bits and are packed with other bits in the buffer, bytes of {@code 0} and
+ * {@code 1} inside compounds are written as their own type with no payload, integers are var-ints, int and long arrays
+ * use {@link NetByteBuf#writeIntSequence(int[], int, int)} and {@link NetByteBuf#writeLongSequence(long[], int, int)},
+ * and compound keys and string values are each written in full only the first time they appear in a payload, with
+ * later occurrences referring back to them by index.
+ */
+final class CompactNbt {
+    private static final int TYPE_BITS = 4;
+    private static final int FALSE_TYPE = 13;
+    private static final int TRUE_TYPE = 14;
+    private static final int MAX_STRING_LENGTH = 65535;
+    private static final int MAX_DEPTH = 512;
+
+    private CompactNbt() {}
+
+    static final class Writer {
+        private final NetByteBuf buf;
+        private final Object2IntMap<String> keys = new Object2IntOpenHashMap<>();
+        private final Object2IntMap<String> strings = new Object2IntOpenHashMap<>();
+
+        Writer(NetByteBuf buf) {
+            this.buf = buf;
+            keys.defaultReturnValue(-1);
+            strings.defaultReturnValue(-1);
+        }
+
+        void writeRoot(@Nullable NbtElement element) {
+            if (element == null) {
+                buf.writeFixedBits(NbtElement.END_TYPE, TYPE_BITS);
+                return;
+            }
+
+            int type = typeOf(element);
+            buf.writeFixedBits(type, TYPE_BITS);
+            writePayload(type, element);
+        }
+
+        private static int typeOf(NbtElement element) {
+            if (element instanceof NbtByte nbtByte) {
+                byte value = nbtByte.byteValue();
+                if (value == 0) return FALSE_TYPE;
+                if (value == 1) return TRUE_TYPE;
+            }
+            return element.getType();
+        }
+
+        private void writePayload(int type, NbtElement element) {
+            switch (type) {
+                case FALSE_TYPE, TRUE_TYPE -> {}
+                case NbtElement.BYTE_TYPE -> buf.writeByte(((AbstractNbtNumber) element).byteValue());
+                case NbtElement.SHORT_TYPE -> buf.writeVarInt(((AbstractNbtNumber) element).shortValue());
+                case NbtElement.INT_TYPE -> buf.writeVarInt(((AbstractNbtNumber) element).intValue());
+                case NbtElement.LONG_TYPE -> buf.writeVarLong(((AbstractNbtNumber) element).longValue());
+                case NbtElement.FLOAT_TYPE -> buf.writeFloat(((AbstractNbtNumber) element).floatValue());
+                case NbtElement.DOUBLE_TYPE -> buf.writeDouble(((AbstractNbtNumber) element).doubleValue());
+                case NbtElement.BYTE_ARRAY_TYPE -> {
+                    byte[] array = ((NbtByteArray) element).getByteArray();
+                    buf.writeVarUnsignedInt(array.length);
+                    buf.writeBytes(array);
+                }
+                case NbtElement.STRING_TYPE -> writeTableString(strings, element.asString());
+                case NbtElement.LIST_TYPE -> {
+                    NbtList list = (NbtList) element;
+                    int size = list.size();
+                    int heldType = size == 0 ? NbtElement.END_TYPE : list.getHeldType();
+                    buf.writeFixedBits(heldType, TYPE_BITS);
+                    buf.writeVarUnsignedInt(size);
+                    for (NbtElement child : list) {
+                        writePayload(heldType, child);
+                    }
+                }
+                case NbtElement.COMPOUND_TYPE -> {
+                    NbtCompound compound = (NbtCompound) element;
+                    for (String key : compound.getKeys()) {
+                        NbtElement child = compound.get(key);
+                        int childType = typeOf(child);
+                        buf.writeFixedBits(childType, TYPE_BITS);
+                        writeTableString(keys, key);
+                        writePayload(childType, child);
+                    }
+                    buf.writeFixedBits(NbtElement.END_TYPE, TYPE_BITS);
+                }
+                case NbtElement.INT_ARRAY_TYPE -> {
+                    int[] array = ((NbtIntArray) element).getIntArray();
+                    buf.writeVarUnsignedInt(array.length);
+                    buf.writeIntSequence(array, 0, array.length);
+                }
+                case NbtElement.LONG_ARRAY_TYPE -> {
+                    long[] array = ((NbtLongArray) element).getLongArray();
+                    buf.writeVarUnsignedInt(array.length);
+                    buf.writeLongSequence(array, 0, array.length);
+                }
+                default -> throw new IllegalArgumentException("Unable to write NBT element of type " + type);
+            }
+        }
+
+        private void writeTableString(Object2IntMap<String> table, String value) {
+            int index = table.getInt(value);
+            if (index >= 0) {
+                buf.writeVarUnsignedInt(index + 1);
+            } else {
+                buf.writeVarUnsignedInt(0);
+                buf.writeString(value, MAX_STRING_LENGTH);
+                table.put(value, table.size());
+            }
+        }
+    }
+
+    static final class Reader {
+        private final NetByteBuf buf;
+        private final List<String> keys = new ArrayList<>();
+        private final List<String> strings = new ArrayList<>();
+        private int depth = 0;
+
+        Reader(NetByteBuf buf) {
+            this.buf = buf;
+        }
+
+        int readRootType() {
+            return readType(TRUE_TYPE);
+        }
+
+        void readRoot(int type, NbtScanner scanner) {
+            if (type == NbtElement.END_TYPE) {
+                if (scanner.start(NbtEnd.TYPE) == NbtScanner.Result.CONTINUE) {
+                    scanner.visitEnd();
+                }
+                return;
+            }
+
+            if (scanner.start(nbtTypeOf(type)) == NbtScanner.Result.CONTINUE) {
+                readPayload(type, scanner);
+            } else {
+                skipPayload(type);
+            }
+        }
+
+        /**
+         * Reads a payload and passes it to the scanner. Unlike vanilla, this always consumes the whole payload, even
+         * when the scanner breaks or halts, so that the rest of the buffer can still be read.
+         */
+        private NbtScanner.Result readPayload(int type, NbtScanner scanner) {
+            return switch (type) {
+                case FALSE_TYPE -> scanner.visitByte((byte) 0);
+                case TRUE_TYPE -> scanner.visitByte((byte) 1);
+                case NbtElement.BYTE_TYPE -> scanner.visitByte(buf.readByte());
+                case NbtElement.SHORT_TYPE -> scanner.visitShort((short) buf.readVarInt());
+                case NbtElement.INT_TYPE -> scanner.visitInt(buf.readVarInt());
+                case NbtElement.LONG_TYPE -> scanner.visitLong(buf.readVarLong());
+                case NbtElement.FLOAT_TYPE -> scanner.visitFloat(buf.readFloat());
+                case NbtElement.DOUBLE_TYPE -> scanner.visitDouble(buf.readDouble());
+                case NbtElement.BYTE_ARRAY_TYPE -> scanner.visitByteArray(readByteArray());
+                case NbtElement.STRING_TYPE -> scanner.visitString(readTableString(strings));
+                case NbtElement.LIST_TYPE -> readList(scanner);
+                case NbtElement.COMPOUND_TYPE -> readCompound(scanner);
+                case NbtElement.INT_ARRAY_TYPE -> scanner.visitIntArray(readIntArray());
+                case NbtElement.LONG_ARRAY_TYPE -> scanner.visitLongArray(readLongArray());
+                default -> throw new DecoderException("Read an unknown compact NBT type: " + type);
+            };
+        }
+
+        private NbtScanner.Result readList(NbtScanner scanner) {
+            int heldType = readType(NbtElement.LONG_ARRAY_TYPE);
+            int size = readListSize(heldType);
+
+            push();
+            NbtType<?> nbtHeldType = nbtTypeOf(heldType);
+            NbtScanner.Result result;
+            int index = 0;
+            switch (scanner.visitListMeta(nbtHeldType, size)) {
+                case HALT -> result = NbtScanner.Result.HALT;
+                case BREAK -> result = null;
+                default -> {
+                    result = null;
+                    loop:
+                    for (; index < size; index++) {
+                        switch (scanner.startListItem(nbtHeldType, index)) {
+                            case HALT -> {
+                                result = NbtScanner.Result.HALT;
+                                break loop;
+                            }
+                            case BREAK -> {
+                                break loop;
+                            }
+                            case SKIP -> skipPayload(heldType);
+                            default -> {
+                                NbtScanner.Result itemResult = readPayload(heldType, scanner);
+                                if (itemResult == NbtScanner.Result.HALT) {
+                                    index++;
+                                    result = NbtScanner.Result.HALT;
+                                    break loop;
+                                } else if (itemResult == NbtScanner.Result.BREAK) {
+                                    index++;
+                                    break loop;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            for (; index < size; index++) {
+                skipPayload(heldType);
+            }
+            pop();
+
+            return result == null ? scanner.endNested() : result;
+        }
+
+        private NbtScanner.Result readCompound(NbtScanner scanner) {
+            push();
+            NbtScanner.Result result = null;
+            int type;
+            loop:
+            while ((type = readType(TRUE_TYPE)) != NbtElement.END_TYPE) {
+                NbtType<?> nbtType = nbtTypeOf(type);
+                switch (scanner.visitSubNbtType(nbtType)) {
+                    case HALT -> {
+                        result = NbtScanner.Result.HALT;
+                        skipEntry(type);
+                        break loop;
+                    }
+                    case BREAK -> {
+                        skipEntry(type);
+                        break loop;
+                    }
+                    case SKIP -> skipEntry(type);
+                    default -> {
+                        String key = readTableString(keys);
+                        switch (scanner.startSubNbt(nbtType, key)) {
+                            case HALT -> {
+                                result = NbtScanner.Result.HALT;
+                                skipPayload(type);
+                                break loop;
+                            }
+                            case BREAK -> {
+                                skipPayload(type);
+                                break loop;
+                            }
+                            case SKIP -> skipPayload(type);
+                            default -> {
+                                NbtScanner.Result entryResult = readPayload(type, scanner);
+                                if (entryResult == NbtScanner.Result.HALT) {
+                                    result = NbtScanner.Result.HALT;
+                                    break loop;
+                                } else if (entryResult == NbtScanner.Result.BREAK) {
+                                    break loop;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (type != NbtElement.END_TYPE) {
+                while ((type = readType(TRUE_TYPE)) != NbtElement.END_TYPE) {
+                    skipEntry(type);
+                }
+            }
+            pop();
+
+            return result == null ? scanner.endNested() : result;
+        }
+
+        private void skipEntry(int type) {
+            // keys must still be read so that the key table stays in sync
+            readTableString(keys);
+            skipPayload(type);
+        }
+
+        private void skipPayload(int type) {
+            switch (type) {
+                case FALSE_TYPE, TRUE_TYPE -> {}
+                case NbtElement.BYTE_TYPE -> buf.skipBytes(1);
+                case NbtElement.SHORT_TYPE, NbtElement.INT_TYPE -> buf.readVarInt();
+                case NbtElement.LONG_TYPE -> buf.readVarLong();
+                case NbtElement.FLOAT_TYPE -> buf.skipBytes(4);
+                case NbtElement.DOUBLE_TYPE -> buf.skipBytes(8);
+                case NbtElement.BYTE_ARRAY_TYPE -> buf.skipBytes(readArrayLength());
+                case NbtElement.STRING_TYPE -> readTableString(strings);
+                case NbtElement.LIST_TYPE -> {
+                    int heldType = readType(NbtElement.LONG_ARRAY_TYPE);
+                    int size = readListSize(heldType);
+                    push();
+                    for (int i = 0; i < size; i++) {
+                        skipPayload(heldType);
+                    }
+                    pop();
+                }
+                case NbtElement.COMPOUND_TYPE -> {
+                    push();
+                    int childType;
+                    while ((childType = readType(TRUE_TYPE)) != NbtElement.END_TYPE) {
+                        skipEntry(childType);
+                    }
+                    pop();
+                }
+                case NbtElement.INT_ARRAY_TYPE -> readIntArray();
+                case NbtElement.LONG_ARRAY_TYPE -> readLongArray();
+                default -> throw new DecoderException("Read an unknown compact NBT type: " + type);
+            }
+        }
+
+        private int readType(int max) {
+            int type = buf.readFixedBits(TYPE_BITS);
+            if (type > max) throw new DecoderException("Read an unknown compact NBT type: " + type);
+            return type;
+        }
+
+        private static NbtType<?> nbtTypeOf(int type) {
+            return type == FALSE_TYPE || type == TRUE_TYPE ? NbtByte.TYPE : NbtTypes.byId(type);
+        }
+
+        private int readListSize(int heldType) {
+            int size = buf.readVarUnsignedInt();
+            if (heldType == NbtElement.END_TYPE && size != 0) {
+                throw new DecoderException("Read a non-empty compact NBT list of END tags");
+            }
+            // every element takes at least 4 bits, and the first may fit in the already-consumed partial byte
+            if (size < 0 || size > buf.readableBytes() * 2L + 1) {
+                throw new DecoderException("Compact NBT list length " + size + " exceeds readable bytes");
+            }
+            return size;
+        }
+
+        private int readArrayLength() {
+            int length = buf.readVarUnsignedInt();
+            if (length > buf.readableBytes()) {
+                throw new DecoderException("Compact NBT array length " + length + " exceeds readable bytes");
+            }
+            return length;
+        }
+
+        private byte[] readByteArray() {
+            byte[] array = new byte[readArrayLength()];
+            buf.readBytes(array);
+            return array;
+        }
+
+        private int[] readIntArray() {
+            int length = buf.checkSequenceLength(buf.readVarUnsignedInt());
+            return buf.readIntSequence(new int[length], 0, length);
+        }
+
+        private long[] readLongArray() {
+            int length = buf.checkSequenceLength(buf.readVarUnsignedInt());
+            return buf.readLongSequence(new long[length], 0, length);
+        }
+
+        private String readTableString(List<String> table) {
+            int index = buf.readVarUnsignedInt();
+            if (index == 0) {
+                String value = buf.readString(MAX_STRING_LENGTH);
+                table.add(value);
+                return value;
+            }
+
+            if (index > table.size()) {
+                throw new DecoderException("Read an unknown compact NBT string index: " + (index - 1));
+            }
+            return table.get(index - 1);
+        }
+
+        private void push() {
+            if (++depth > MAX_DEPTH) {
+                throw new DecoderException("Compact NBT is nested deeper than " + MAX_DEPTH);
+            }
+        }
+
+        private void pop() {
+            depth--;
+        }
+    }
+}
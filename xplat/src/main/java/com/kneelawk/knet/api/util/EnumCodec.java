@@ -0,0 +1,341 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.util;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+import org.jetbrains.annotations.NotNull;
+
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * Cached encoding information for an enum class, used to write enum constants, sets and maps without looking up the
+ * enum's constants each time.
+ * <p>
+ * Codecs are cached per enum class in a {@link ClassValue}, so {@link #of(Class)} is cheap to call repeatedly.
+ *
+ * @param <E> the type of enum this codec encodes.
+ */
+public final class EnumCodec<E extends Enum<E>> {
+    private static final ClassValue<EnumCodec<?>> CACHE = new ClassValue<>() {
+        @Override
+        protected EnumCodec<?> computeValue(@NotNull Class<?> type) {
+            return create(type);
+        }
+    };
+
+    private final Class<E> enumClass;
+    private final E[] constants;
+    private final int bits;
+
+    private EnumCodec(Class<E> enumClass, E[] constants) {
+        this.enumClass = enumClass;
+        this.constants = constants;
+        bits = MathHelper.ceilLog2(constants.length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static EnumCodec<?> create(Class<?> type) {
+        Object[] constants = type.getEnumConstants();
+        if (constants == null) throw new IllegalArgumentException("Not an enum " + type);
+        return new EnumCodec((Class) type, (Enum[]) constants);
+    }
+
+    /**
+     * Gets the codec for the given enum class.
+     *
+     * @param enumClass the class of the enum.
+     * @param <E>       the type of the enum.
+     * @return the enum's codec.
+     * @throws IllegalArgumentException if the given class is not an enum.
+     */
+    @SuppressWarnings("unchecked")
+    public static <E extends Enum<E>> EnumCodec<E> of(@NotNull Class<E> enumClass) throws IllegalArgumentException {
+        return (EnumCodec<E>) CACHE.get(enumClass);
+    }
+
+    /**
+     * Gets the enum class this codec encodes.
+     *
+     * @return the enum class.
+     */
+    public Class<E> getEnumClass() {
+        return enumClass;
+    }
+
+    /**
+     * Gets the number of constants in this enum.
+     *
+     * @return the number of constants.
+     */
+    public int size() {
+        return constants.length;
+    }
+
+    /**
+     * Gets the number of bits a single constant is written with.
+     *
+     * @return the number of bits per constant.
+     */
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Gets the constant with the given ordinal, without copying the enum's constants.
+     *
+     * @param ordinal the ordinal of the constant.
+     * @return the constant.
+     * @throws IndexOutOfBoundsException if there is no constant with the given ordinal.
+     */
+    public E get(int ordinal) throws IndexOutOfBoundsException {
+        return constants[ordinal];
+    }
+
+    /**
+     * Writes a constant using {@link #getBits()} bits.
+     *
+     * @param buf   the buffer to write to.
+     * @param value the constant to write.
+     */
+    public void write(@NotNull NetByteBuf buf, @NotNull E value) {
+        if (bits > 0) buf.writeFixedBits(value.ordinal(), bits);
+    }
+
+    /**
+     * Reads a constant written by {@link #write(NetByteBuf, Enum)}.
+     *
+     * @param buf the buffer to read from.
+     * @return the constant read.
+     * @throws DecoderException if the read ordinal does not belong to a constant.
+     */
+    public E read(@NotNull NetByteBuf buf) throws DecoderException {
+        if (constants.length == 0) {
+            throw new IllegalArgumentException("Tried to read an enum value without any values! How did you do this?");
+        }
+        if (bits == 0) return constants[0];
+        int ordinal = buf.readFixedBits(bits);
+        if (ordinal >= constants.length) {
+            throw new DecoderException("Read an invalid ordinal " + ordinal + " for " + enumClass);
+        }
+        return constants[ordinal];
+    }
+
+    /**
+     * Writes a set of constants as a bitmask of {@link #size()} bits.
+     *
+     * @param buf the buffer to write to.
+     * @param set the set to write.
+     */
+    public void writeSet(@NotNull NetByteBuf buf, @NotNull Set<E> set) {
+        int size = constants.length;
+        if (size <= 64) {
+            long mask = 0;
+            for (E value : set) {
+                mask |= 1L << value.ordinal();
+            }
+            if (size > 0) buf.writeFixedBits(mask, size);
+            return;
+        }
+
+        long[] masks = new long[(size + 63) >>> 6];
+        for (E value : set) {
+            masks[value.ordinal() >>> 6] |= 1L << value.ordinal();
+        }
+        for (int i = 0; i < masks.length; i++) {
+            buf.writeFixedBits(masks[i], Math.min(64, size - (i << 6)));
+        }
+    }
+
+    /**
+     * Reads a set written by {@link #writeSet(NetByteBuf, Set)}.
+     *
+     * @param buf the buffer to read from.
+     * @return a new set holding the constants read.
+     */
+    public EnumSet<E> readSet(@NotNull NetByteBuf buf) {
+        return readSet(buf, EnumSet.noneOf(enumClass));
+    }
+
+    /**
+     * Reads a set written by {@link #writeSet(NetByteBuf, Set)} into an existing set, replacing its contents.
+     *
+     * @param buf  the buffer to read from.
+     * @param dest the set to read into.
+     * @return the destination set.
+     */
+    public EnumSet<E> readSet(@NotNull NetByteBuf buf, @NotNull EnumSet<E> dest) {
+        dest.clear();
+        readSetThen(buf, dest::add);
+        return dest;
+    }
+
+    /**
+     * Writes a map keyed by this enum's constants, as a bitmask of present keys followed by their values in ordinal
+     * order.
+     *
+     * @param buf    the buffer to write to.
+     * @param map    the map to write.
+     * @param writer the writer for the map's values.
+     * @param <V>    the type of the map's values.
+     */
+    public <V> void writeMap(@NotNull NetByteBuf buf, @NotNull EnumMap<E, V> map,
+                             @NotNull NetByteBuf.NetWriter<V> writer) {
+        // EnumMaps iterate in ordinal order, which is the order the reader expects
+        writeSet(buf, map.keySet());
+        for (Map.Entry<E, V> entry : map.entrySet()) {
+            writer.accept(buf, entry.getValue());
+        }
+    }
+
+    /**
+     * Reads a map written by {@link #writeMap(NetByteBuf, EnumMap, NetByteBuf.NetWriter)}.
+     *
+     * @param buf    the buffer to read from.
+     * @param reader the reader for the map's values.
+     * @param <V>    the type of the map's values.
+     * @return a new map holding the entries read.
+     */
+    public <V> EnumMap<E, V> readMap(@NotNull NetByteBuf buf, @NotNull NetByteBuf.NetReader<V> reader) {
+        EnumMap<E, V> map = new EnumMap<>(enumClass);
+        readSetThen(buf, value -> map.put(value, reader.apply(buf)));
+        return map;
+    }
+
+    /**
+     * Writes per-constant integers, like a map from each constant to an amount, indexed by ordinal.
+     * <p>
+     * Only non-zero values are written, as a bitmask followed by var-ints, so this is both smaller and allocation-free
+     * compared to writing an {@code EnumMap<E, Integer>}.
+     *
+     * @param buf    the buffer to write to.
+     * @param values the value for each constant, indexed by ordinal. Must have exactly {@link #size()} elements.
+     * @throws IllegalArgumentException if the array does not have one element per constant.
+     */
+    public void writeInts(@NotNull NetByteBuf buf, int @NotNull [] values) throws IllegalArgumentException {
+        checkOrdinalArray(values.length);
+        writeNonZeroMask(buf, values.length, i -> values[i] != 0);
+        for (int value : values) {
+            if (value != 0) buf.writeVarInt(value);
+        }
+    }
+
+    /**
+     * Reads per-constant integers written by {@link #writeInts(NetByteBuf, int[])}.
+     *
+     * @param buf  the buffer to read from.
+     * @param dest the array to read into, indexed by ordinal. Must have exactly {@link #size()} elements.
+     * @return the destination array.
+     * @throws IllegalArgumentException if the array does not have one element per constant.
+     */
+    public int[] readInts(@NotNull NetByteBuf buf, int @NotNull [] dest) throws IllegalArgumentException {
+        checkOrdinalArray(dest.length);
+        Arrays.fill(dest, 0);
+        readSetThen(buf, value -> dest[value.ordinal()] = buf.readVarInt());
+        return dest;
+    }
+
+    /**
+     * Writes per-constant long integers, indexed by ordinal.
+     *
+     * @param buf    the buffer to write to.
+     * @param values the value for each constant, indexed by ordinal. Must have exactly {@link #size()} elements.
+     * @throws IllegalArgumentException if the array does not have one element per constant.
+     * @see #writeInts(NetByteBuf, int[])
+     */
+    public void writeLongs(@NotNull NetByteBuf buf, long @NotNull [] values) throws IllegalArgumentException {
+        checkOrdinalArray(values.length);
+        writeNonZeroMask(buf, values.length, i -> values[i] != 0);
+        for (long value : values) {
+            if (value != 0) buf.writeVarLong(value);
+        }
+    }
+
+    /**
+     * Reads per-constant long integers written by {@link #writeLongs(NetByteBuf, long[])}.
+     *
+     * @param buf  the buffer to read from.
+     * @param dest the array to read into, indexed by ordinal. Must have exactly {@link #size()} elements.
+     * @return the destination array.
+     * @throws IllegalArgumentException if the array does not have one element per constant.
+     */
+    public long[] readLongs(@NotNull NetByteBuf buf, long @NotNull [] dest) throws IllegalArgumentException {
+        checkOrdinalArray(dest.length);
+        Arrays.fill(dest, 0);
+        readSetThen(buf, value -> dest[value.ordinal()] = buf.readVarLong());
+        return dest;
+    }
+
+    private void checkOrdinalArray(int length) {
+        if (length != constants.length) {
+            throw new IllegalArgumentException(
+                "Expected one value per constant of " + enumClass + " (" + constants.length + ") but got " + length);
+        }
+    }
+
+    private void writeNonZeroMask(NetByteBuf buf, int size, IntPredicate present) {
+        for (int start = 0; start < size; start += 64) {
+            int length = Math.min(64, size - start);
+            long mask = 0;
+            for (int i = 0; i < length; i++) {
+                if (present.test(start + i)) mask |= 1L << i;
+            }
+            buf.writeFixedBits(mask, length);
+        }
+    }
+
+    private void readSetThen(NetByteBuf buf, Consumer<E> action) {
+        // all mask words are written before any values, so they must all be read before calling the action
+        int size = constants.length;
+        if (size <= 64) {
+            if (size > 0) forEachBit(buf.readFixedBitsLong(size), 0, action);
+            return;
+        }
+
+        long[] masks = new long[(size + 63) >>> 6];
+        for (int i = 0; i < masks.length; i++) {
+            masks[i] = buf.readFixedBitsLong(Math.min(64, size - (i << 6)));
+        }
+        for (int i = 0; i < masks.length; i++) {
+            forEachBit(masks[i], i << 6, action);
+        }
+    }
+
+    private void forEachBit(long mask, int start, Consumer<E> action) {
+        while (mask != 0) {
+            action.accept(constants[start + Long.numberOfTrailingZeros(mask)]);
+            mask &= mask - 1;
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.util.Identifier;
+import net.minecraft.util.InvalidIdentifierException;
+
+/**
+ * A bounded table of strings that lets repeated strings be sent as small indices instead of their full text.
+ * <p>
+ * A writer and a reader each hold their own table. Because both apply exactly the same additions and lookups in the
+ * same order, both always evict the same least-recently-used entries and so stay in sync without ever sending
+ * evictions. This means a table must only ever be used with a single ordered stream, like one direction of a single
+ * connection.
+ * <p>
+ * Note: this class is not thread-safe. Each table should only be used by one thread at a time.
+ *
+ * @see NetByteBuf#writeInternedString(String)
+ * @see NetByteBuf#readInternedString()
+ */
+public class InternTable {
+    private final int capacity;
+    private final Object2IntMap<String> indices;
+    private final String[] values;
+    private final @Nullable Identifier[] identifiers;
+
+    // doubly-linked list of slots, from least-recently-used (head) to most-recently-used (tail)
+    private final int[] prev;
+    private final int[] next;
+    private int head = -1;
+    private int tail = -1;
+    private int size = 0;
+
+    /**
+     * Creates a new intern table.
+     *
+     * @param capacity the maximum number of strings this table holds before evicting the least-recently-used ones.
+     */
+    public InternTable(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Intern table capacity must be positive! (" + capacity + ")");
+        }
+        this.capacity = capacity;
+        indices = new Object2IntOpenHashMap<>(capacity);
+        indices.defaultReturnValue(-1);
+        values = new String[capacity];
+        identifiers = new Identifier[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+
+    /**
+     * Gets the maximum number of strings this table holds.
+     *
+     * @return this table's capacity.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the number of strings currently in this table.
+     *
+     * @return the number of strings in this table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up the index of a string, marking it as recently used if present.
+     *
+     * @param value the string to look up.
+     * @return the index of the string, or {@code -1} if the string is not in this table.
+     */
+    public int indexOf(@NotNull String value) {
+        int index = indices.getInt(value);
+        if (index >= 0) touch(index);
+        return index;
+    }
+
+    /**
+     * Gets the string at an index, marking it as recently used.
+     *
+     * @param index the index of the string.
+     * @return the string at the given index.
+     * @throws IndexOutOfBoundsException if there is no string at the given index.
+     */
+    public @NotNull String get(int index) {
+        checkIndex(index);
+        touch(index);
+        return values[index];
+    }
+
+    /**
+     * Gets the string at an index as an {@link Identifier}, marking it as recently used.
+     * <p>
+     * The parsed identifier is cached, so repeated lookups of the same entry return the same instance.
+     *
+     * @param index the index of the identifier.
+     * @return the identifier at the given index.
+     * @throws IndexOutOfBoundsException  if there is no string at the given index.
+     * @throws InvalidIdentifierException if the string at the given index is not a valid identifier.
+     */
+    public @NotNull Identifier getIdentifier(int index) {
+        checkIndex(index);
+        touch(index);
+        Identifier id = identifiers[index];
+        if (id == null) {
+            id = new Identifier(values[index]);
+            identifiers[index] = id;
+        }
+        return id;
+    }
+
+    /**
+     * Adds a string to this table, evicting the least-recently-used string if this table is full.
+     * <p>
+     * The string must not already be in this table.
+     *
+     * @param value the string to add.
+     * @return the index the string was added at.
+     */
+    public int add(@NotNull String value) {
+        int index;
+        if (size < capacity) {
+            index = size++;
+        } else {
+            index = head;
+            unlink(index);
+            indices.removeInt(values[index]);
+        }
+
+        values[index] = value;
+        identifiers[index] = null;
+        indices.put(value, index);
+        linkTail(index);
+        return index;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(
+                "Intern table index " + index + " out of bounds for table of size " + size);
+        }
+    }
+
+    private void touch(int index) {
+        if (index == tail) return;
+        unlink(index);
+        linkTail(index);
+    }
+
+    private void unlink(int index) {
+        int p = prev[index];
+        int n = next[index];
+        if (p == -1) head = n;
+        else next[p] = n;
+        if (n == -1) tail = p;
+        else prev[n] = p;
+    }
+
+    private void linkTail(int index) {
+        prev[index] = tail;
+        next[index] = -1;
+        if (tail == -1) head = index;
+        else next[tail] = index;
+        tail = index;
+    }
+}
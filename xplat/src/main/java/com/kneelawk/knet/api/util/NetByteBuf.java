@@ -8,21 +8,49 @@
 
 package com.kneelawk.knet.api.util;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import org.jetbrains.annotations.Nullable;
+import org.joml.Quaternionf;
+import org.joml.Quaternionfc;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.longs.LongHeapPriorityQueue;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.DecoderException;
-
+import io.netty.handler.codec.EncoderException;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.nbt.NbtCompound;
+import net.minecraft.nbt.NbtElement;
+import net.minecraft.nbt.scanner.NbtCollector;
+import net.minecraft.nbt.scanner.NbtScanner;
 import net.minecraft.network.PacketByteBuf;
+import net.minecraft.network.encoding.VarInts;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.InvalidIdentifierException;
+import net.minecraft.util.collection.IndexedIterable;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.HeightLimitView;
 
 /**
  * Special {@link PacketByteBuf} class that provides methods specific to "offset" reading and writing - like writing a
@@ -51,6 +79,87 @@ public class NetByteBuf extends PacketByteBuf {
         }
     }
 
+    /**
+     * A header of bits reserved in a {@link NetByteBuf} by {@link #reserveBitHeader(int)}, that can be filled in
+     * while the rest of the payload is being written.
+     * <p>
+     * Every change to the header is immediately written back to its reserved bytes, so there is nothing to flush once
+     * the payload is done.
+     */
+    public static final class BitHeader {
+        private final NetByteBuf buffer;
+        private final int index;
+        private final int bits;
+        private long value;
+
+        BitHeader(NetByteBuf buffer, int index, int bits) {
+            this.buffer = buffer;
+            this.index = index;
+            this.bits = bits;
+        }
+
+        /**
+         * Gets the number of bits in this header.
+         *
+         * @return the number of bits in this header.
+         */
+        public int getBits() {
+            return bits;
+        }
+
+        /**
+         * Gets the current value of this header.
+         *
+         * @return this header's bits, compacted into a long.
+         */
+        public long getValue() {
+            return value;
+        }
+
+        /**
+         * Sets a single flag in this header.
+         *
+         * @param bit  the index of the bit to set.
+         * @param flag the value of the bit.
+         * @return this header.
+         * @throws IndexOutOfBoundsException if the bit is outside this header.
+         */
+        public BitHeader set(int bit, boolean flag) throws IndexOutOfBoundsException {
+            Objects.checkIndex(bit, bits);
+            if (flag) {
+                value |= 1L << bit;
+            } else {
+                value &= ~(1L << bit);
+            }
+            patch(bit >>> 3, bit >>> 3);
+            return this;
+        }
+
+        /**
+         * Sets a range of bits in this header.
+         *
+         * @param offset the index of the lowest bit to set.
+         * @param length the number of bits to set.
+         * @param bits   the value of the bits to set. Only the lowest {@code length} bits are used.
+         * @return this header.
+         * @throws IndexOutOfBoundsException if the range is outside this header.
+         */
+        public BitHeader setBits(int offset, int length, long bits) throws IndexOutOfBoundsException {
+            Objects.checkFromIndexSize(offset, length, this.bits);
+            if (length == 0) return this;
+            long mask = (length == 64 ? -1L : (1L << length) - 1) << offset;
+            value = (value & ~mask) | ((bits << offset) & mask);
+            patch(offset >>> 3, (offset + length - 1) >>> 3);
+            return this;
+        }
+
+        private void patch(int firstByte, int lastByte) {
+            for (int i = firstByte; i <= lastByte; i++) {
+                buffer.setByte(index + i, (int) (value >>> (i << 3)));
+            }
+        }
+    }
+
     /**
      * A functional interface to read a value from {@link NetByteBuf}.
      *
@@ -162,6 +271,28 @@ public class NetByteBuf extends PacketByteBuf {
      */
     public static final int MAX_VAR_U_INT_4_BYTES = 1 << 7 * 4;
 
+    /**
+     * The maximum number of components of buffers created by {@link #compositeBuffer()} before they are consolidated.
+     */
+    private static final int MAX_COMPOSITE_COMPONENTS = 1024;
+
+    /**
+     * The smallest buffer {@link #writeSlice(ByteBuf)} appends as a component instead of copying, as tiny components
+     * cost more to track than to copy.
+     */
+    private static final int MIN_COMPOSITE_SLICE_BYTES = 256;
+
+    private static final int ENTROPY_SINGLE = 0;
+    private static final int ENTROPY_PACKED = 1;
+    private static final int ENTROPY_HUFFMAN = 2;
+    private static final int ENTROPY_LENGTH_BITS = 4;
+    private static final int MAX_HUFFMAN_CODE_LENGTH = (1 << ENTROPY_LENGTH_BITS) - 1;
+
+    /**
+     * The largest alphabet {@link #writeEntropyCoded(int[], int, int, int)} supports.
+     */
+    public static final int MAX_ENTROPY_ALPHABET_SIZE = 1 << MAX_HUFFMAN_CODE_LENGTH;
+
     /**
      * Creates a new {@link NetByteBuf} without any initial capacity.
      *
@@ -202,6 +333,85 @@ public class NetByteBuf extends PacketByteBuf {
         return asNetByteBuf(Unpooled.buffer(initialCapacity), passthrough);
     }
 
+    /**
+     * Creates a new {@link NetByteBuf} backed by a {@link CompositeByteBuf}, so that
+     * {@link #writeSlice(ByteBuf)} can append buffers to it without copying.
+     *
+     * @return A new {@link NetByteBuf} from {@link Unpooled#compositeBuffer(int)}
+     */
+    public static NetByteBuf compositeBuffer() {
+        return compositeBuffer(false);
+    }
+
+    /**
+     * Creates a new {@link NetByteBuf} backed by a {@link CompositeByteBuf} while optionally disabling optimizations.
+     *
+     * @param passthrough whether to disable optimizations.
+     * @return A new {@link NetByteBuf} from {@link Unpooled#compositeBuffer(int)}
+     */
+    public static NetByteBuf compositeBuffer(boolean passthrough) {
+        return asNetByteBuf(Unpooled.compositeBuffer(MAX_COMPOSITE_COMPONENTS), passthrough);
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeVarInt(int)} uses to write the given value.
+     * <p>
+     * Note: this is the size of KNet's signed var-int, not of the var-int written in passthrough mode.
+     *
+     * @param value the value to get the size of.
+     * @return the number of bytes the value takes, between 1 and 5.
+     */
+    public static int varIntSize(int value) {
+        return (32 - Integer.numberOfLeadingZeros(value < 0 ? ~value : value) + 7) / 7;
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeVarLong(long)} uses to write the given value.
+     * <p>
+     * Note: this is the size of KNet's signed var-long, not of the var-long written in passthrough mode.
+     *
+     * @param value the value to get the size of.
+     * @return the number of bytes the value takes, between 1 and 10.
+     */
+    public static int varLongSize(long value) {
+        return (64 - Long.numberOfLeadingZeros(value < 0 ? ~value : value) + 7) / 7;
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeVarUnsignedInt(int)} uses to write the given value.
+     *
+     * @param value the value to get the size of.
+     * @return the number of bytes the value takes, between 1 and 5.
+     */
+    public static int varUnsignedIntSize(int value) {
+        return VarInts.getSizeInBytes(value);
+    }
+
+    /**
+     * Gets the number of bytes {@link #writeString(String, int)} uses to write the given string.
+     *
+     * @param value the string to get the size of.
+     * @return the number of bytes the string takes, including its length prefix.
+     */
+    public static int stringSize(CharSequence value) {
+        int bytes = ByteBufUtil.utf8Bytes(value);
+        return VarInts.getSizeInBytes(bytes) + bytes;
+    }
+
+    /**
+     * Gets the number of bytes a given number of bits written with the bit-level methods, like
+     * {@link #writeFixedBits(long, int)} and {@link #writePackedInts(int[], int, int, int)}, take up.
+     * <p>
+     * As bits are packed into partial bytes shared with other bit-level writes, this is an upper bound on the space
+     * they take rather than an exact size.
+     *
+     * @param bits the number of bits written.
+     * @return the number of bytes the bits take up at most.
+     */
+    public static long bitsSize(long bits) {
+        return (bits + 7) >>> 3;
+    }
+
     // Hold on to the wrapped buffer, so we can access it when changing passthrough-ness while wrapping.
     private final ByteBuf wrapped;
 
@@ -211,6 +421,25 @@ public class NetByteBuf extends PacketByteBuf {
      */
     public final boolean passthrough;
 
+    /**
+     * The view of {@link #wrapped} with the opposite {@link #passthrough} setting, created lazily so that repeatedly
+     * switching modes on the same buffer only ever allocates one extra wrapper.
+     */
+    @Nullable
+    private NetByteBuf passthroughTwin;
+
+    /**
+     * The table used for interned strings. If this is null, interned strings are always written in full.
+     */
+    @Nullable
+    private InternTable internTable;
+
+    /**
+     * The cache used when reading strings. If this is null, every string read is decoded into a new instance.
+     */
+    @Nullable
+    private StringCache stringCache;
+
     // Byte-based flag access
     private int readPartialOffset = 8;// so it resets down to 0 and reads a byte on read
     private int readPartialCache;
@@ -218,6 +447,22 @@ public class NetByteBuf extends PacketByteBuf {
     private int readPartialOffsetMark = 8;
     private int readPartialCacheMark;
 
+    /**
+     * Up to 8 bytes loaded ahead of the reader index by bit reads, so that successive bit reads over adjacent bytes
+     * only touch the underlying buffer once per 8 bytes. Bit {@code 0} is the lowest bit of the byte at
+     * {@link #readRegisterIndex}.
+     */
+    private long readRegister;
+    /**
+     * The buffer index of the first byte held in {@link #readRegister}. The register is only used while the reader
+     * index is still at this position, so any other read in between simply causes it to be loaded again.
+     */
+    private int readRegisterIndex;
+    /**
+     * The number of bytes left in {@link #readRegister}.
+     */
+    private int readRegisterBytes;
+
     /**
      * The byte position that is currently being written to. -1 means that no bytes have been written to yet.
      */
@@ -257,6 +502,9 @@ public class NetByteBuf extends PacketByteBuf {
      * Returns the given {@link ByteBuf} as {@link NetByteBuf}. If the given instance is already a {@link NetByteBuf}
      * then the given buffer is returned (note that this may result in unexpected consequences if multiple read/write
      * Boolean methods are called on the given buffer before you called this).
+     * <p>
+     * Wrapping never copies the underlying bytes, and re-wrapping a {@link NetByteBuf} in the same mode never
+     * allocates.
      *
      * @param buf the buffer to be converted into a {@link NetByteBuf}.
      * @return the given buffer as a {@link NetByteBuf}.
@@ -293,13 +541,47 @@ public class NetByteBuf extends PacketByteBuf {
             if (netBuf.passthrough == passthrough) {
                 return netBuf;
             } else {
-                return new NetByteBuf(netBuf.wrapped, passthrough);
+                return netBuf.getPassthroughTwin();
             }
         } else {
             return new NetByteBuf(buf, passthrough);
         }
     }
 
+    /**
+     * Gets the view of the underlying buffer with the opposite passthrough setting to this one.
+     * <p>
+     * Both views share the same underlying buffer and so never copy any bytes. The twin is cached, so nested
+     * wrapping in alternating modes does not allocate a new wrapper each time. Its bit-level state is reset every
+     * time it is handed out, so it behaves exactly like a freshly created wrapper would.
+     * <p>
+     * The twin does not link back to this buffer, as this buffer may still be in use by an outer caller while the twin
+     * is, so wrapping the twin again gets a separate wrapper of its own.
+     *
+     * @return the view of the underlying buffer with the opposite passthrough setting.
+     */
+    private NetByteBuf getPassthroughTwin() {
+        NetByteBuf twin = passthroughTwin;
+        if (twin == null) {
+            twin = new NetByteBuf(wrapped, !passthrough);
+            passthroughTwin = twin;
+        } else {
+            twin.resetBitState();
+        }
+        return twin;
+    }
+
+    private void resetBitState() {
+        readPartialOffset = 8;
+        readPartialCache = 0;
+        readPartialOffsetMark = 8;
+        readPartialCacheMark = 0;
+        readRegisterBytes = 0;
+        writePartialIndex = -1;
+        writePartialOffset = 0;
+        writePartialCache = 0;
+    }
+
     /**
      * Bit version of {@link #writerIndex()}.
      *
@@ -328,11 +610,54 @@ public class NetByteBuf extends PacketByteBuf {
         return asNetByteBuf(super.readBytes(length), passthrough);
     }
 
+    /**
+     * Reads a slice of this buffer as a new {@link NetByteBuf}, sharing this buffer's memory instead of copying it.
+     * <p>
+     * The returned buffer has its own bit-level read and write state, so bits packed into this buffer before or after
+     * the slice are not visible to it, and vice versa.
+     * <p>
+     * The returned buffer holds its own reference to the underlying memory, which keeps the received data alive after
+     * the payload's handler returns. Whoever ends up owning it, like a handler that forwards it to other players with
+     * {@link #writeSlice(ByteBuf)}, must call {@link #release()} on it once done.
+     *
+     * @param length the number of bytes to read.
+     * @return a retained slice of this buffer.
+     */
+    public NetByteBuf readRetainedSliceNet(int length) {
+        return asNetByteBuf(super.readRetainedSlice(length), passthrough);
+    }
+
+    /**
+     * Writes all readable bytes of the given buffer into this buffer, advancing its reader index.
+     * <p>
+     * If this buffer is backed by a {@link CompositeByteBuf}, like those created by {@link #compositeBuffer()}, and the
+     * given buffer is large enough, then a retained slice of it is appended as a new component instead of copying its
+     * bytes. The caller keeps its own reference to the given buffer and is still responsible for releasing it.
+     * <p>
+     * This does not affect this buffer's bit-level state, so bits written afterward may still be packed into a partial
+     * byte written before the slice.
+     *
+     * @param src the buffer to write.
+     * @return this buffer.
+     */
+    public NetByteBuf writeSlice(ByteBuf src) {
+        int length = src.readableBytes();
+        if (length >= MIN_COMPOSITE_SLICE_BYTES && wrapped instanceof CompositeByteBuf composite) {
+            // drop any writable space at the end, so the new component starts right at the writer index
+            composite.capacity(composite.writerIndex());
+            composite.addComponent(true, src.readRetainedSlice(length));
+        } else {
+            writeBytes(src);
+        }
+        return this;
+    }
+
     @Override
     public NetByteBuf clear() {
         super.clear();
         readPartialOffset = 8;
         readPartialCache = 0;
+        readRegisterBytes = 0;
         writePartialIndex = -1;
         writePartialOffset = 0;
         writePartialCache = 0;
@@ -378,20 +703,62 @@ public class NetByteBuf extends PacketByteBuf {
         return this;
     }
 
-    void writePartialBitsBegin() {
-        if (writePartialIndex == -1 || writePartialOffset == 8) {
-            writePartialIndex = writerIndex();
-            writePartialOffset = 0;
-            writePartialCache = 0;
-            writeByte(0);
-        }
+    @Override
+    public NetByteBuf discardReadBytes() {
+        super.discardReadBytes();
+        // bytes have moved, so the register no longer lines up with the buffer
+        readRegisterBytes = 0;
+        return this;
+    }
+
+    @Override
+    public NetByteBuf discardSomeReadBytes() {
+        super.discardSomeReadBytes();
+        readRegisterBytes = 0;
+        return this;
     }
 
     void readPartialBitsBegin() {
         if (readPartialOffset == 8) {
             readPartialOffset = 0;
-            readPartialCache = readUnsignedByte();
+            readPartialCache = (int) readRegisterBytes(1);
+        }
+    }
+
+    /**
+     * Reads the next {@code byteCount} bytes as a little-endian value, serving them from {@link #readRegister} if it
+     * holds them, and loading the next 8 bytes into it with a single access otherwise.
+     */
+    private long readRegisterBytes(int byteCount) {
+        int index = readerIndex();
+        if (index != readRegisterIndex || readRegisterBytes < byteCount) {
+            if (readableBytes() < Long.BYTES) {
+                // too close to the end to load a whole register
+                readRegisterBytes = 0;
+                long value = 0;
+                for (int i = 0; i < byteCount; i++) {
+                    value |= (long) readUnsignedByte() << (i << 3);
+                }
+                return value;
+            }
+
+            readRegister = getLongLE(index);
+            readRegisterIndex = index;
+            readRegisterBytes = Long.BYTES;
+        }
+
+        long value;
+        if (byteCount == Long.BYTES) {
+            value = readRegister;
+            readRegister = 0;
+        } else {
+            value = readRegister & ((1L << (byteCount << 3)) - 1);
+            readRegister >>>= byteCount << 3;
         }
+        readRegisterBytes -= byteCount;
+        readRegisterIndex += byteCount;
+        readerIndex(readRegisterIndex);
+        return value;
     }
 
     /**
@@ -405,11 +772,18 @@ public class NetByteBuf extends PacketByteBuf {
             super.writeBoolean(flag);
             return this;
         }
-        writePartialBitsBegin();
-        int toWrite = (flag ? 1 : 0) << writePartialOffset;
-        writePartialCache |= toWrite;
-        writePartialOffset++;
-        setByte(writePartialIndex, writePartialCache);
+        int bit = flag ? 1 : 0;
+        if (writePartialIndex == -1 || writePartialOffset == 8) {
+            // start a new partial byte, writing the flag with it instead of reserving the byte first
+            writePartialIndex = writerIndex();
+            writePartialCache = bit;
+            writePartialOffset = 1;
+            writeByte(bit);
+        } else {
+            writePartialCache |= bit << writePartialOffset;
+            writePartialOffset++;
+            setByte(writePartialIndex, writePartialCache);
+        }
         return this;
     }
 
@@ -444,8 +818,31 @@ public class NetByteBuf extends PacketByteBuf {
             throw new IllegalArgumentException("Tried to write more bits than are in an integer! (" + length + ")");
         }
 
-        writePartialBitsBegin();
+        writeBits(value, length);
+        return this;
+    }
+
+    /**
+     * Writes a fixed number of bits out to the stream.
+     *
+     * @param value  the value to write out.
+     * @param length The number of bits to write.
+     * @return This buffer.
+     * @throws IllegalArgumentException if the length argument was less than 1 or greater than 64.
+     */
+    public NetByteBuf writeFixedBits(long value, int length) throws IllegalArgumentException {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Tried to write too few bits! (" + length + ")");
+        }
+        if (length > 64) {
+            throw new IllegalArgumentException("Tried to write more bits than are in a long! (" + length + ")");
+        }
+
+        writeBits(value, length);
+        return this;
+    }
 
+    private void writeBits(long value, int length) {
         // - length = 10
         // - bits = 0123456789
 
@@ -461,72 +858,59 @@ public class NetByteBuf extends PacketByteBuf {
         // - writePartialOffset = 1
 
         // first stage: take the toppermost bits and append them to the cache (if the cache contains bits)
-        if (writePartialOffset > 0) {
-
-            // top length = 8 - (num bits in cache) or length, whichever is SMALLER
+        if (writePartialIndex != -1 && writePartialOffset > 0 && writePartialOffset < 8) {
             int availableBits = 8 - writePartialOffset;
 
             if (availableBits >= length) {
-                int mask = (1 << length) - 1;
-                int bitsToWrite = value & mask;
+                int bitsToWrite = (int) value & ((1 << length) - 1);
 
                 writePartialCache |= bitsToWrite << writePartialOffset;
                 setByte(writePartialIndex, writePartialCache);
                 writePartialOffset += length;
                 // we just wrote out the entire length, no need to do anything else.
-                return this;
-            } else { // topLength < length -- we will still need to be writing out more bits after this
-                // length = 10
-                // topLength = 1
-                // value = __01 2345 6789
-                // want == ____ ____ ___0
-                // mask == ____ ____ ___1
-                // shift back = 9
-
-                int mask = (1 << availableBits) - 1;
+                return;
+            }
 
-                int shift = length - availableBits;
+            int bitsToWrite = (int) (value >>> (length - availableBits)) & ((1 << availableBits) - 1);
 
-                int bitsToWrite = (value >>> shift) & mask;
+            writePartialCache |= bitsToWrite << writePartialOffset;
+            setByte(writePartialIndex, writePartialCache);
 
-                writePartialCache |= bitsToWrite << writePartialOffset;
-                setByte(writePartialIndex, writePartialCache);
+            length -= availableBits;
+        }
 
-                // we finished a byte, reset values so that the next write will reset and create a new byte
-                writePartialCache = 0;
-                writePartialOffset = 8;
+        // second stage: everything else goes into new bytes at the writer index, the top bits as whole bytes and the
+        // bottom few bits in the low bits of a new partial byte. All of these are built up in a single register and
+        // written out in one go.
+        int fullBytes = length >>> 3;
+        int remainingBits = length & 7;
 
-                // now shift the value down ready for the next iteration
-                length -= availableBits;
-            }
+        long register = 0;
+        if (fullBytes > 0) {
+            // whole bytes are written most-significant first
+            register = Long.reverseBytes((value >>> remainingBits) << (64 - (fullBytes << 3)));
         }
 
-        while (length >= 8) {
-            // write out full 8 bit chunks of the length until we reach 0
-            writePartialBitsBegin();
-
-            int byteToWrite = (value >>> (length - 8)) & 0xFF;
+        int byteCount = fullBytes;
+        int lastByte = 0;
+        if (remainingBits > 0) {
+            lastByte = (int) value & ((1 << remainingBits) - 1);
+            register |= (long) lastByte << (fullBytes << 3);
+            byteCount++;
+        }
 
-            setByte(writePartialIndex, byteToWrite);
+        int start = writerIndex();
+        writeLEBytes(register, byteCount);
 
+        writePartialIndex = start + byteCount - 1;
+        if (remainingBits > 0) {
+            writePartialCache = lastByte;
+            writePartialOffset = remainingBits;
+        } else {
             // we finished a byte, reset values so that the next write will reset and create a new byte
             writePartialCache = 0;
             writePartialOffset = 8;
-
-            length -= 8;
-        }
-
-        if (length > 0) {
-            // we have a few bits left over to append
-            writePartialBitsBegin();
-
-            int mask = (1 << length) - 1;
-            writePartialCache = value & mask;
-            setByte(writePartialIndex, writePartialCache);
-            writePartialOffset = length;
         }
-
-        return this;
     }
 
     /**
@@ -543,68 +927,1291 @@ public class NetByteBuf extends PacketByteBuf {
         if (length > 32) {
             throw new IllegalArgumentException("Tried to read more bits than are in an integer! (" + length + ")");
         }
-        readPartialBitsBegin();
 
-        int value = 0;
+        return (int) readBits(length);
+    }
+
+    /**
+     * Reads a fixed number of bits from the given stream.
+     *
+     * @param length The number of bits to read.
+     * @return The read bits, compacted into a long.
+     * @throws IllegalArgumentException if the length argument was less than 1 or greater than 64.
+     */
+    public long readFixedBitsLong(int length) throws IllegalArgumentException {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Tried to read too few bits! (" + length + ")");
+        }
+        if (length > 64) {
+            throw new IllegalArgumentException("Tried to read more bits than are in a long! (" + length + ")");
+        }
+
+        return readBits(length);
+    }
+
+    /**
+     * Reserves a header of up to 64 bits at the current writer position, which can then be filled in while writing the
+     * rest of the payload.
+     * <p>
+     * Unlike flags written with {@link #writeBoolean(boolean)}, the header always takes exactly {@code ceil(bits / 8)}
+     * bytes, no matter how many byte-aligned writes happen between setting its flags. The header is read back with
+     * {@link #readBitHeader(int)}.
+     *
+     * @param bits the number of bits to reserve.
+     * @return the reserved header, with all bits cleared.
+     * @throws IllegalArgumentException if the number of bits was less than 1 or greater than 64.
+     */
+    public BitHeader reserveBitHeader(int bits) throws IllegalArgumentException {
+        checkBitHeaderLength(bits);
+        int index = writerIndex();
+        writeZero((bits + 7) >>> 3);
+        return new BitHeader(this, index, bits);
+    }
+
+    /**
+     * Reads a header written with {@link #reserveBitHeader(int)}.
+     * <p>
+     * The whole header is read at once. Bit {@code i} of the header is bit {@code i} of the returned value.
+     *
+     * @param bits the number of bits the header was reserved with.
+     * @return the header's bits, compacted into a long.
+     * @throws IllegalArgumentException if the number of bits was less than 1 or greater than 64.
+     */
+    public long readBitHeader(int bits) throws IllegalArgumentException {
+        checkBitHeaderLength(bits);
+        int byteCount = (bits + 7) >>> 3;
+        int index = readerIndex();
+        long value;
+        if (readableBytes() >= 8) {
+            value = getLongLE(index);
+        } else {
+            value = 0;
+            for (int i = 0; i < byteCount; i++) {
+                value |= (long) getUnsignedByte(index + i) << (i << 3);
+            }
+        }
+        skipBytes(byteCount);
+        return bits == 64 ? value : value & ((1L << bits) - 1);
+    }
+
+    private static void checkBitHeaderLength(int bits) {
+        if (bits <= 0) {
+            throw new IllegalArgumentException("Tried to use too few bits in a header! (" + bits + ")");
+        }
+        if (bits > 64) {
+            throw new IllegalArgumentException("Tried to use more bits in a header than are in a long! (" + bits + ")");
+        }
+    }
+
+    private long readBits(int length) {
+        long value = 0;
 
-        if (readPartialOffset > 0) {
+        if (readPartialOffset < 8) {
             // If we have bits left at the top of the buffer...
             int availableBits = 8 - readPartialOffset;
             if (availableBits >= length) {
                 // If the wanted bits are completely contained within the cache
-                int mask = (1 << length) - 1;
-                value = (readPartialCache >>> readPartialOffset) & mask;
+                value = (readPartialCache >>> readPartialOffset) & ((1 << length) - 1);
                 readPartialOffset += length;
                 return value;
-            } else {
-                // If we need to read more bits than are available in the cache
-                int bitsRead = readPartialCache >>> readPartialOffset;
+            }
 
-                value = bitsRead;
+            // If we need to read more bits than are available in the cache
+            value = readPartialCache >>> readPartialOffset;
+            length -= availableBits;
+        }
 
-                // We finished reading a byte, reset values so the next step will read them properly
+        int fullBytes = length >>> 3;
+        int remainingBits = length & 7;
+        int byteCount = remainingBits > 0 ? fullBytes + 1 : fullBytes;
 
-                readPartialCache = 0;
-                readPartialOffset = 8;
+        long register = readRegisterBytes(byteCount);
 
-                length -= availableBits;
-            }
+        if (fullBytes > 0) {
+            // whole bytes were written most-significant first
+            value = (value << (fullBytes << 3)) | (Long.reverseBytes(register) >>> (64 - (fullBytes << 3)));
         }
 
-        while (length >= 8) {
-            readPartialBitsBegin();
-            length -= 8;
-            value <<= 8;
-            value |= readPartialCache;
+        if (remainingBits > 0) {
+            readPartialCache = (int) (register >>> (fullBytes << 3)) & 0xFF;
+            value = (value << remainingBits) | (readPartialCache & ((1 << remainingBits) - 1));
+            readPartialOffset = remainingBits;
+        } else {
+            // We finished reading a byte, reset values so the next read will start a new one
+            readPartialCache = 0;
             readPartialOffset = 8;
         }
 
-        if (length > 0) {
-            readPartialBitsBegin();
-
-            int mask = (1 << length) - 1;
-
-            value <<= length;
-            value |= readPartialCache & mask;
-            readPartialOffset = length;
-        }
-
         return value;
     }
 
-    @Override
-    public NetByteBuf writeEnumConstant(Enum<?> value) {
-        if (passthrough) {
-            super.writeEnumConstant(value);
-            return this;
-        }
-        Enum<?>[] possible = value.getDeclaringClass().getEnumConstants();
-        if (possible == null) throw new IllegalArgumentException("Not an enum " + value.getClass());
-        if (possible.length == 0) {
-            throw new IllegalArgumentException("Tried to write an enum value without any values! How did you do this?");
+    /**
+     * Writes a range of integers, each packed into the given number of bits.
+     * <p>
+     * Entries are packed into whole 64-bit words, so they take up exactly {@code len * bitsPerEntry} bits, plus any
+     * padding needed to finish the last byte. Only the bottom {@code bitsPerEntry} bits of each value are written.
+     * The length is not written, so the reader must already know how many entries to read.
+     *
+     * @param values       the array containing the values to write.
+     * @param off          the index of the first value to write.
+     * @param len          the number of values to write.
+     * @param bitsPerEntry the number of bits to write for each value, between 0 and 32.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 32.
+     * @see #readPackedInts(int[], int, int, int)
+     */
+    public NetByteBuf writePackedInts(int[] values, int off, int len, int bitsPerEntry)
+        throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 32);
+        Objects.checkFromIndexSize(off, len, values.length);
+        if (bitsPerEntry == 0) return this;
+
+        PackedBitsWriter writer = new PackedBitsWriter(this, bitsPerEntry);
+        for (int i = off, end = off + len; i < end; i++) {
+            writer.write(values[i] & 0xFFFFFFFFL);
         }
-        if (possible.length == 1) return this;
-        writeFixedBits(value.ordinal(), MathHelper.ceilLog2(possible.length));
+        writer.finish();
+        return this;
+    }
+
+    /**
+     * Writes a range of integers, packed into the smallest number of bits that can hold the largest one.
+     * <p>
+     * The chosen number of bits is written ahead of the values. Negative values are treated as unsigned and so will
+     * always use 32 bits.
+     *
+     * @param values the array containing the values to write.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @return this buffer.
+     * @see #readPackedInts(int[], int, int)
+     */
+    public NetByteBuf writePackedInts(int[] values, int off, int len) {
+        Objects.checkFromIndexSize(off, len, values.length);
+        int all = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            all |= values[i];
+        }
+        int bitsPerEntry = 32 - Integer.numberOfLeadingZeros(all);
+        writeFixedBits(bitsPerEntry, 6);
+        return writePackedInts(values, off, len, bitsPerEntry);
+    }
+
+    /**
+     * Reads a range of integers written by {@link #writePackedInts(int[], int, int, int)} directly into the given
+     * array.
+     *
+     * @param dest         the array to read the values into.
+     * @param off          the index in the array to start putting values at.
+     * @param len          the number of values to read.
+     * @param bitsPerEntry the number of bits each value was written with, between 0 and 32.
+     * @return the given array.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 32.
+     */
+    public int[] readPackedInts(int[] dest, int off, int len, int bitsPerEntry) throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 32);
+        Objects.checkFromIndexSize(off, len, dest.length);
+        if (bitsPerEntry == 0) {
+            Arrays.fill(dest, off, off + len, 0);
+            return dest;
+        }
+
+        PackedBitsReader reader = new PackedBitsReader(this, bitsPerEntry, len);
+        for (int i = off, end = off + len; i < end; i++) {
+            dest[i] = (int) reader.read();
+        }
+        return dest;
+    }
+
+    /**
+     * Reads a range of integers written by {@link #writePackedInts(int[], int, int)} directly into the given array.
+     *
+     * @param dest the array to read the values into.
+     * @param off  the index in the array to start putting values at.
+     * @param len  the number of values to read.
+     * @return the given array.
+     */
+    public int[] readPackedInts(int[] dest, int off, int len) {
+        return readPackedInts(dest, off, len, readBitsPerEntry(32));
+    }
+
+    /**
+     * Writes a range of long integers, each packed into the given number of bits.
+     * <p>
+     * Entries are packed into whole 64-bit words, so they take up exactly {@code len * bitsPerEntry} bits, plus any
+     * padding needed to finish the last byte. Only the bottom {@code bitsPerEntry} bits of each value are written.
+     * The length is not written, so the reader must already know how many entries to read.
+     *
+     * @param values       the array containing the values to write.
+     * @param off          the index of the first value to write.
+     * @param len          the number of values to write.
+     * @param bitsPerEntry the number of bits to write for each value, between 0 and 64.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 64.
+     * @see #readPackedLongs(long[], int, int, int)
+     */
+    public NetByteBuf writePackedLongs(long[] values, int off, int len, int bitsPerEntry)
+        throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 64);
+        Objects.checkFromIndexSize(off, len, values.length);
+        if (bitsPerEntry == 0) return this;
+
+        PackedBitsWriter writer = new PackedBitsWriter(this, bitsPerEntry);
+        for (int i = off, end = off + len; i < end; i++) {
+            writer.write(values[i]);
+        }
+        writer.finish();
+        return this;
+    }
+
+    /**
+     * Writes a range of long integers, packed into the smallest number of bits that can hold the largest one.
+     * <p>
+     * The chosen number of bits is written ahead of the values. Negative values are treated as unsigned and so will
+     * always use 64 bits.
+     *
+     * @param values the array containing the values to write.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @return this buffer.
+     * @see #readPackedLongs(long[], int, int)
+     */
+    public NetByteBuf writePackedLongs(long[] values, int off, int len) {
+        Objects.checkFromIndexSize(off, len, values.length);
+        long all = 0;
+        for (int i = off, end = off + len; i < end; i++) {
+            all |= values[i];
+        }
+        int bitsPerEntry = 64 - Long.numberOfLeadingZeros(all);
+        writeFixedBits(bitsPerEntry, 7);
+        return writePackedLongs(values, off, len, bitsPerEntry);
+    }
+
+    /**
+     * Reads a range of long integers written by {@link #writePackedLongs(long[], int, int, int)} directly into the
+     * given array.
+     *
+     * @param dest         the array to read the values into.
+     * @param off          the index in the array to start putting values at.
+     * @param len          the number of values to read.
+     * @param bitsPerEntry the number of bits each value was written with, between 0 and 64.
+     * @return the given array.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 64.
+     */
+    public long[] readPackedLongs(long[] dest, int off, int len, int bitsPerEntry) throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 64);
+        Objects.checkFromIndexSize(off, len, dest.length);
+        if (bitsPerEntry == 0) {
+            Arrays.fill(dest, off, off + len, 0L);
+            return dest;
+        }
+
+        PackedBitsReader reader = new PackedBitsReader(this, bitsPerEntry, len);
+        for (int i = off, end = off + len; i < end; i++) {
+            dest[i] = reader.read();
+        }
+        return dest;
+    }
+
+    /**
+     * Reads a range of long integers written by {@link #writePackedLongs(long[], int, int)} directly into the given
+     * array.
+     *
+     * @param dest the array to read the values into.
+     * @param off  the index in the array to start putting values at.
+     * @param len  the number of values to read.
+     * @return the given array.
+     */
+    public long[] readPackedLongs(long[] dest, int off, int len) {
+        return readPackedLongs(dest, off, len, readBitsPerEntry(64));
+    }
+
+    /**
+     * Writes a list of integers, each packed into the given number of bits.
+     * <p>
+     * This uses the same format as {@link #writePackedInts(int[], int, int, int)} and likewise does not write the
+     * list's size.
+     *
+     * @param values       the list of values to write.
+     * @param bitsPerEntry the number of bits to write for each value, between 0 and 32.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 32.
+     * @see #readPackedInts(IntList, int, int)
+     */
+    public NetByteBuf writePackedInts(IntList values, int bitsPerEntry) throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 32);
+        if (bitsPerEntry == 0) return this;
+
+        PackedBitsWriter writer = new PackedBitsWriter(this, bitsPerEntry);
+        for (int i = 0, size = values.size(); i < size; i++) {
+            writer.write(values.getInt(i) & 0xFFFFFFFFL);
+        }
+        writer.finish();
+        return this;
+    }
+
+    /**
+     * Writes a list of integers, packed into the smallest number of bits that can hold the largest one.
+     * <p>
+     * This uses the same format as {@link #writePackedInts(int[], int, int)} and likewise does not write the list's
+     * size.
+     *
+     * @param values the list of values to write.
+     * @return this buffer.
+     * @see #readPackedInts(IntList, int)
+     */
+    public NetByteBuf writePackedInts(IntList values) {
+        int all = 0;
+        for (int i = 0, size = values.size(); i < size; i++) {
+            all |= values.getInt(i);
+        }
+        int bitsPerEntry = 32 - Integer.numberOfLeadingZeros(all);
+        writeFixedBits(bitsPerEntry, 6);
+        return writePackedInts(values, bitsPerEntry);
+    }
+
+    /**
+     * Reads integers written by {@link #writePackedInts(IntList, int)}, adding them to the end of the given list.
+     *
+     * @param dest         the list to add the values to.
+     * @param len          the number of values to read.
+     * @param bitsPerEntry the number of bits each value was written with, between 0 and 32.
+     * @return the given list.
+     * @throws IllegalArgumentException if bitsPerEntry is less than 0 or greater than 32.
+     */
+    public IntList readPackedInts(IntList dest, int len, int bitsPerEntry) throws IllegalArgumentException {
+        checkBitsPerEntry(bitsPerEntry, 32);
+        if (len < 0) throw new IllegalArgumentException("Tried to read a negative number of entries! (" + len + ")");
+        if (dest instanceof IntArrayList arrayList) arrayList.ensureCapacity(arrayList.size() + len);
+
+        if (bitsPerEntry == 0) {
+            for (int i = 0; i < len; i++) {
+                dest.add(0);
+            }
+            return dest;
+        }
+
+        PackedBitsReader reader = new PackedBitsReader(this, bitsPerEntry, len);
+        for (int i = 0; i < len; i++) {
+            dest.add((int) reader.read());
+        }
+        return dest;
+    }
+
+    /**
+     * Reads integers written by {@link #writePackedInts(IntList)}, adding them to the end of the given list.
+     *
+     * @param dest the list to add the values to.
+     * @param len  the number of values to read.
+     * @return the given list.
+     */
+    public IntList readPackedInts(IntList dest, int len) {
+        return readPackedInts(dest, len, readBitsPerEntry(32));
+    }
+
+    /**
+     * The number of entries in each independently-encoded block of a sequence.
+     */
+    private static final int SEQUENCE_BLOCK_SIZE = 128;
+
+    private static final int SEQUENCE_RAW = 0;
+    private static final int SEQUENCE_DELTA = 1;
+    private static final int SEQUENCE_FRAME_OF_REFERENCE = 2;
+    private static final int SEQUENCE_DELTA_FRAME_OF_REFERENCE = 3;
+
+    /**
+     * Writes a range of integers, picking the cheapest encoding for each block of values.
+     * <p>
+     * Values are split into blocks of 128, and each block is written using whichever is smallest of:
+     * <ul>
+     * <li>each value as a var-int,</li>
+     * <li>the first value, then the difference between each value and the previous one as var-ints,</li>
+     * <li>the smallest value, then each value's offset from it, bit-packed (frame-of-reference),</li>
+     * <li>the first value, then the differences between values, frame-of-reference bit-packed.</li>
+     * </ul>
+     * This makes sorted or clustered sequences, like entity ids or slot indices, much smaller than writing each
+     * value individually, while never being more than a few bits per block larger. The length is not written, so the
+     * reader must already know how many values to read.
+     *
+     * @param values the array containing the values to write.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @return this buffer.
+     * @see #readIntSequence(int[], int, int)
+     */
+    public NetByteBuf writeIntSequence(int[] values, int off, int len) {
+        Objects.checkFromIndexSize(off, len, values.length);
+        long[] block = new long[Math.min(len, SEQUENCE_BLOCK_SIZE)];
+        for (int start = off, end = off + len; start < end; start += SEQUENCE_BLOCK_SIZE) {
+            int blockLen = Math.min(end - start, SEQUENCE_BLOCK_SIZE);
+            for (int i = 0; i < blockLen; i++) {
+                block[i] = values[start + i];
+            }
+            writeSequenceBlock(block, blockLen);
+        }
+        return this;
+    }
+
+    /**
+     * Reads a range of integers written by {@link #writeIntSequence(int[], int, int)} directly into the given array.
+     *
+     * @param dest the array to read the values into.
+     * @param off  the index in the array to start putting values at.
+     * @param len  the number of values to read.
+     * @return the given array.
+     */
+    public int[] readIntSequence(int[] dest, int off, int len) {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        long[] block = new long[Math.min(len, SEQUENCE_BLOCK_SIZE)];
+        for (int start = off, end = off + len; start < end; start += SEQUENCE_BLOCK_SIZE) {
+            int blockLen = Math.min(end - start, SEQUENCE_BLOCK_SIZE);
+            readSequenceBlock(block, blockLen);
+            for (int i = 0; i < blockLen; i++) {
+                dest[start + i] = (int) block[i];
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Writes a range of long integers, picking the cheapest encoding for each block of values.
+     * <p>
+     * This uses the same encodings as {@link #writeIntSequence(int[], int, int)}, which makes it well suited to things
+     * like sorted {@link BlockPos#asLong()} values.
+     *
+     * @param values the array containing the values to write.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @return this buffer.
+     * @see #readLongSequence(long[], int, int)
+     */
+    public NetByteBuf writeLongSequence(long[] values, int off, int len) {
+        Objects.checkFromIndexSize(off, len, values.length);
+        long[] block = new long[Math.min(len, SEQUENCE_BLOCK_SIZE)];
+        for (int start = off, end = off + len; start < end; start += SEQUENCE_BLOCK_SIZE) {
+            int blockLen = Math.min(end - start, SEQUENCE_BLOCK_SIZE);
+            System.arraycopy(values, start, block, 0, blockLen);
+            writeSequenceBlock(block, blockLen);
+        }
+        return this;
+    }
+
+    /**
+     * Reads a range of long integers written by {@link #writeLongSequence(long[], int, int)} directly into the given
+     * array.
+     *
+     * @param dest the array to read the values into.
+     * @param off  the index in the array to start putting values at.
+     * @param len  the number of values to read.
+     * @return the given array.
+     */
+    public long[] readLongSequence(long[] dest, int off, int len) {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        long[] block = new long[Math.min(len, SEQUENCE_BLOCK_SIZE)];
+        for (int start = off, end = off + len; start < end; start += SEQUENCE_BLOCK_SIZE) {
+            int blockLen = Math.min(end - start, SEQUENCE_BLOCK_SIZE);
+            readSequenceBlock(block, blockLen);
+            System.arraycopy(block, 0, dest, start, blockLen);
+        }
+        return dest;
+    }
+
+    /**
+     * Checks that the given number of sequence values could actually be present in the remaining bytes, guarding
+     * against huge allocations caused by bad lengths.
+     *
+     * @param len the number of values about to be read.
+     * @return the given number of values.
+     * @throws DecoderException if there are not enough readable bytes to hold that many values.
+     */
+    public int checkSequenceLength(int len) throws DecoderException {
+        // every block starts with at least one whole var-int
+        if (len < 0 || (len + SEQUENCE_BLOCK_SIZE - 1) / SEQUENCE_BLOCK_SIZE > readableBytes()) {
+            throw new DecoderException("Read an invalid sequence length: " + len);
+        }
+        return len;
+    }
+
+    private void writeSequenceBlock(long[] block, int len) {
+        long first = block[0];
+        long min = first;
+        long minDelta = 0;
+        long rawBytes = varLongSize(first);
+        long deltaBytes = rawBytes;
+        for (int i = 1; i < len; i++) {
+            long value = block[i];
+            long delta = value - block[i - 1];
+            if (value < min) min = value;
+            if (i == 1 || delta < minDelta) minDelta = delta;
+            rawBytes += varLongSize(value);
+            deltaBytes += varLongSize(delta);
+        }
+
+        // offsets are treated as unsigned, so wrapping around is fine
+        long offsetBits = 0;
+        long deltaOffsetBits = 0;
+        for (int i = 0; i < len; i++) {
+            offsetBits |= block[i] - min;
+            if (i > 0) deltaOffsetBits |= block[i] - block[i - 1] - minDelta;
+        }
+        int offsetWidth = 64 - Long.numberOfLeadingZeros(offsetBits);
+        int deltaOffsetWidth = 64 - Long.numberOfLeadingZeros(deltaOffsetBits);
+
+        long rawSize = rawBytes * 8;
+        long deltaSize = deltaBytes * 8;
+        long forSize = varLongSize(min) * 8L + 7 + (long) offsetWidth * len;
+        long deltaForSize = varLongSize(first) * 8L;
+        if (len > 1) deltaForSize += varLongSize(minDelta) * 8L + 7 + (long) deltaOffsetWidth * (len - 1);
+
+        int mode = SEQUENCE_RAW;
+        long best = rawSize;
+        if (deltaSize < best) {
+            mode = SEQUENCE_DELTA;
+            best = deltaSize;
+        }
+        if (forSize < best) {
+            mode = SEQUENCE_FRAME_OF_REFERENCE;
+            best = forSize;
+        }
+        if (deltaForSize < best) {
+            mode = SEQUENCE_DELTA_FRAME_OF_REFERENCE;
+        }
+
+        writeFixedBits(mode, 2);
+        switch (mode) {
+            case SEQUENCE_RAW -> {
+                for (int i = 0; i < len; i++) {
+                    writeVarLong(block[i]);
+                }
+            }
+            case SEQUENCE_DELTA -> {
+                writeVarLong(first);
+                for (int i = 1; i < len; i++) {
+                    writeVarLong(block[i] - block[i - 1]);
+                }
+            }
+            case SEQUENCE_FRAME_OF_REFERENCE -> {
+                writeVarLong(min);
+                for (int i = 0; i < len; i++) {
+                    block[i] -= min;
+                }
+                writeFixedBits(offsetWidth, 7);
+                writePackedLongs(block, 0, len, offsetWidth);
+            }
+            default -> {
+                writeVarLong(first);
+                if (len > 1) {
+                    writeVarLong(minDelta);
+                    // go backwards so each delta is computed before its previous value is overwritten
+                    for (int i = len - 1; i > 0; i--) {
+                        block[i] = block[i] - block[i - 1] - minDelta;
+                    }
+                    writeFixedBits(deltaOffsetWidth, 7);
+                    writePackedLongs(block, 1, len - 1, deltaOffsetWidth);
+                }
+            }
+        }
+    }
+
+    private void readSequenceBlock(long[] block, int len) {
+        int mode = readFixedBits(2);
+        switch (mode) {
+            case SEQUENCE_RAW -> {
+                for (int i = 0; i < len; i++) {
+                    block[i] = readVarLong();
+                }
+            }
+            case SEQUENCE_DELTA -> {
+                block[0] = readVarLong();
+                for (int i = 1; i < len; i++) {
+                    block[i] = block[i - 1] + readVarLong();
+                }
+            }
+            case SEQUENCE_FRAME_OF_REFERENCE -> {
+                long min = readVarLong();
+                readPackedLongs(block, 0, len, readBitsPerEntry(64));
+                for (int i = 0; i < len; i++) {
+                    block[i] += min;
+                }
+            }
+            default -> {
+                block[0] = readVarLong();
+                if (len > 1) {
+                    long minDelta = readVarLong();
+                    readPackedLongs(block, 1, len - 1, readBitsPerEntry(64));
+                    for (int i = 1; i < len; i++) {
+                        block[i] += block[i - 1] + minDelta;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes shorts from an array as fixed-width 2-byte values.
+     * <p>
+     * When possible, the whole range is copied in bulk through an NIO view of this buffer instead of writing each value
+     * individually.
+     *
+     * @param values the array to write values from.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @param order  the byte order to write each value in.
+     * @return this buffer.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public NetByteBuf writeFixedShorts(short[] values, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, values.length);
+        ByteBuffer nio = writableNioBuffer(Math.multiplyExact(len, 2), order);
+        if (nio != null) {
+            nio.asShortBuffer().put(values, off, len);
+            writerIndex(writerIndex() + len * 2);
+        } else if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = off; i < off + len; i++) {
+                writeShort(values[i]);
+            }
+        } else {
+            for (int i = off; i < off + len; i++) {
+                writeShortLE(values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reads shorts written by {@link #writeFixedShorts(short[], int, int, ByteOrder)} into an array.
+     *
+     * @param dest  the array to read values into.
+     * @param off   the index of the first value to read into.
+     * @param len   the number of values to read.
+     * @param order the byte order each value was written in.
+     * @return the destination array.
+     * @throws IndexOutOfBoundsException if the range is outside the array or there are not enough readable bytes.
+     */
+    public short[] readFixedShorts(short[] dest, int off, int len, ByteOrder order) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        int length = Math.multiplyExact(len, 2);
+        checkReadableBytes(length);
+        wrapped.nioBuffer(readerIndex(), length).order(order).asShortBuffer().get(dest, off, len);
+        skipBytes(length);
+        return dest;
+    }
+
+    /**
+     * Writes ints from an array as fixed-width 4-byte values.
+     * <p>
+     * When possible, the whole range is copied in bulk through an NIO view of this buffer instead of writing each value
+     * individually.
+     *
+     * @param values the array to write values from.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @param order  the byte order to write each value in.
+     * @return this buffer.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public NetByteBuf writeFixedInts(int[] values, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, values.length);
+        ByteBuffer nio = writableNioBuffer(Math.multiplyExact(len, 4), order);
+        if (nio != null) {
+            nio.asIntBuffer().put(values, off, len);
+            writerIndex(writerIndex() + len * 4);
+        } else if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = off; i < off + len; i++) {
+                writeInt(values[i]);
+            }
+        } else {
+            for (int i = off; i < off + len; i++) {
+                writeIntLE(values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reads ints written by {@link #writeFixedInts(int[], int, int, ByteOrder)} into an array.
+     *
+     * @param dest  the array to read values into.
+     * @param off   the index of the first value to read into.
+     * @param len   the number of values to read.
+     * @param order the byte order each value was written in.
+     * @return the destination array.
+     * @throws IndexOutOfBoundsException if the range is outside the array or there are not enough readable bytes.
+     */
+    public int[] readFixedInts(int[] dest, int off, int len, ByteOrder order) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        int length = Math.multiplyExact(len, 4);
+        checkReadableBytes(length);
+        wrapped.nioBuffer(readerIndex(), length).order(order).asIntBuffer().get(dest, off, len);
+        skipBytes(length);
+        return dest;
+    }
+
+    /**
+     * Writes longs from an array as fixed-width 8-byte values.
+     * <p>
+     * When possible, the whole range is copied in bulk through an NIO view of this buffer instead of writing each value
+     * individually.
+     *
+     * @param values the array to write values from.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @param order  the byte order to write each value in.
+     * @return this buffer.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public NetByteBuf writeFixedLongs(long[] values, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, values.length);
+        ByteBuffer nio = writableNioBuffer(Math.multiplyExact(len, 8), order);
+        if (nio != null) {
+            nio.asLongBuffer().put(values, off, len);
+            writerIndex(writerIndex() + len * 8);
+        } else if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = off; i < off + len; i++) {
+                writeLong(values[i]);
+            }
+        } else {
+            for (int i = off; i < off + len; i++) {
+                writeLongLE(values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reads longs written by {@link #writeFixedLongs(long[], int, int, ByteOrder)} into an array.
+     *
+     * @param dest  the array to read values into.
+     * @param off   the index of the first value to read into.
+     * @param len   the number of values to read.
+     * @param order the byte order each value was written in.
+     * @return the destination array.
+     * @throws IndexOutOfBoundsException if the range is outside the array or there are not enough readable bytes.
+     */
+    public long[] readFixedLongs(long[] dest, int off, int len, ByteOrder order) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        int length = Math.multiplyExact(len, 8);
+        checkReadableBytes(length);
+        wrapped.nioBuffer(readerIndex(), length).order(order).asLongBuffer().get(dest, off, len);
+        skipBytes(length);
+        return dest;
+    }
+
+    /**
+     * Writes floats from an array as fixed-width 4-byte values.
+     * <p>
+     * When possible, the whole range is copied in bulk through an NIO view of this buffer instead of writing each value
+     * individually.
+     *
+     * @param values the array to write values from.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @param order  the byte order to write each value in.
+     * @return this buffer.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public NetByteBuf writeFixedFloats(float[] values, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, values.length);
+        ByteBuffer nio = writableNioBuffer(Math.multiplyExact(len, 4), order);
+        if (nio != null) {
+            nio.asFloatBuffer().put(values, off, len);
+            writerIndex(writerIndex() + len * 4);
+        } else if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = off; i < off + len; i++) {
+                writeFloat(values[i]);
+            }
+        } else {
+            for (int i = off; i < off + len; i++) {
+                writeFloatLE(values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reads floats written by {@link #writeFixedFloats(float[], int, int, ByteOrder)} into an array.
+     *
+     * @param dest  the array to read values into.
+     * @param off   the index of the first value to read into.
+     * @param len   the number of values to read.
+     * @param order the byte order each value was written in.
+     * @return the destination array.
+     * @throws IndexOutOfBoundsException if the range is outside the array or there are not enough readable bytes.
+     */
+    public float[] readFixedFloats(float[] dest, int off, int len, ByteOrder order) throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        int length = Math.multiplyExact(len, 4);
+        checkReadableBytes(length);
+        wrapped.nioBuffer(readerIndex(), length).order(order).asFloatBuffer().get(dest, off, len);
+        skipBytes(length);
+        return dest;
+    }
+
+    /**
+     * Writes doubles from an array as fixed-width 8-byte values.
+     * <p>
+     * When possible, the whole range is copied in bulk through an NIO view of this buffer instead of writing each value
+     * individually.
+     *
+     * @param values the array to write values from.
+     * @param off    the index of the first value to write.
+     * @param len    the number of values to write.
+     * @param order  the byte order to write each value in.
+     * @return this buffer.
+     * @throws IndexOutOfBoundsException if the range is outside the array.
+     */
+    public NetByteBuf writeFixedDoubles(double[] values, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, values.length);
+        ByteBuffer nio = writableNioBuffer(Math.multiplyExact(len, 8), order);
+        if (nio != null) {
+            nio.asDoubleBuffer().put(values, off, len);
+            writerIndex(writerIndex() + len * 8);
+        } else if (order == ByteOrder.BIG_ENDIAN) {
+            for (int i = off; i < off + len; i++) {
+                writeDouble(values[i]);
+            }
+        } else {
+            for (int i = off; i < off + len; i++) {
+                writeDoubleLE(values[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Reads doubles written by {@link #writeFixedDoubles(double[], int, int, ByteOrder)} into an array.
+     *
+     * @param dest  the array to read values into.
+     * @param off   the index of the first value to read into.
+     * @param len   the number of values to read.
+     * @param order the byte order each value was written in.
+     * @return the destination array.
+     * @throws IndexOutOfBoundsException if the range is outside the array or there are not enough readable bytes.
+     */
+    public double[] readFixedDoubles(double[] dest, int off, int len, ByteOrder order)
+        throws IndexOutOfBoundsException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        int length = Math.multiplyExact(len, 8);
+        checkReadableBytes(length);
+        wrapped.nioBuffer(readerIndex(), length).order(order).asDoubleBuffer().get(dest, off, len);
+        skipBytes(length);
+        return dest;
+    }
+
+    private @Nullable ByteBuffer writableNioBuffer(int length, ByteOrder order) {
+        ensureWritable(length);
+        // buffers made of multiple components would give us a copy, so writes to it would be lost
+        if (wrapped.nioBufferCount() != 1) return null;
+        return wrapped.nioBuffer(writerIndex(), length).order(order);
+    }
+
+    private void checkReadableBytes(int length) {
+        if (length > readableBytes()) {
+            throw new IndexOutOfBoundsException(
+                "Tried to read " + length + " bytes when only " + readableBytes() + " are readable");
+        }
+    }
+
+    /**
+     * Writes a sequence of symbols, entropy-coding them so that skewed sequences, like palette indices that are mostly
+     * air, take up close to their entropy.
+     * <p>
+     * Each call picks the smallest of three encodings: a single repeated symbol, fixed-width packed symbols like
+     * {@link #writePackedInts(int[], int, int, int)}, or a canonical Huffman code whose code table is written inline,
+     * followed by the coded symbols as a byte-aligned sub-stream.
+     *
+     * @param symbols      the array to write symbols from.
+     * @param off          the index of the first symbol to write.
+     * @param len          the number of symbols to write.
+     * @param alphabetSize the number of possible symbols. Every symbol must be at least {@code 0} and less than this.
+     * @return this buffer.
+     * @throws IllegalArgumentException if the alphabet size is invalid or a symbol is outside the alphabet.
+     * @see #readEntropyCoded(int[], int, int, int)
+     */
+    public NetByteBuf writeEntropyCoded(int[] symbols, int off, int len, int alphabetSize)
+        throws IllegalArgumentException {
+        Objects.checkFromIndexSize(off, len, symbols.length);
+        checkAlphabetSize(alphabetSize);
+
+        int[] freqs = new int[alphabetSize];
+        int used = 0;
+        for (int i = off; i < off + len; i++) {
+            int symbol = symbols[i];
+            if (symbol < 0 || symbol >= alphabetSize) {
+                throw new IllegalArgumentException(
+                    "Tried to write symbol " + symbol + " outside the alphabet of size " + alphabetSize);
+            }
+            if (freqs[symbol]++ == 0) used++;
+        }
+
+        if (used <= 1) {
+            writeFixedBits(ENTROPY_SINGLE, 2);
+            writeVarUnsignedInt(len > 0 ? symbols[off] : 0);
+            return this;
+        }
+
+        int fixedBits = MathHelper.ceilLog2(alphabetSize);
+        int[] lengths = huffmanCodeLengths(freqs, used);
+        long codeBits = 0;
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            codeBits += (long) freqs[symbol] * lengths[symbol];
+        }
+        long denseTableBits = (long) alphabetSize * ENTROPY_LENGTH_BITS;
+        long sparseTableBits = varUnsignedIntSize(used) * 8L + (long) used * (fixedBits + ENTROPY_LENGTH_BITS);
+        boolean sparse = sparseTableBits < denseTableBits;
+        // the sub-stream is byte-aligned, so count its padding too
+        long huffmanBits = 1 + Math.min(sparseTableBits, denseTableBits) + ((codeBits + 7) & ~7L);
+
+        if (huffmanBits >= (long) fixedBits * len) {
+            writeFixedBits(ENTROPY_PACKED, 2);
+            writePackedInts(symbols, off, len, fixedBits);
+            return this;
+        }
+
+        writeFixedBits(ENTROPY_HUFFMAN, 2);
+        writeBoolean(sparse);
+        if (sparse) {
+            writeVarUnsignedInt(used);
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                if (lengths[symbol] > 0) {
+                    writeFixedBits(symbol, fixedBits);
+                    writeFixedBits(lengths[symbol], ENTROPY_LENGTH_BITS);
+                }
+            }
+        } else {
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                writeFixedBits(lengths[symbol], ENTROPY_LENGTH_BITS);
+            }
+        }
+
+        int[] codes = canonicalCodes(lengths);
+        // codes are written most-significant bit first into a sub-stream of whole bytes
+        long bits = 0;
+        int bitCount = 0;
+        for (int i = off; i < off + len; i++) {
+            int symbol = symbols[i];
+            bits = (bits << lengths[symbol]) | codes[symbol];
+            bitCount += lengths[symbol];
+            if (bitCount >= 32) {
+                bitCount -= 32;
+                writeInt((int) (bits >>> bitCount));
+            }
+        }
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            writeByte((int) (bits >>> bitCount));
+        }
+        if (bitCount > 0) {
+            writeByte((int) (bits << (8 - bitCount)));
+        }
+
+        return this;
+    }
+
+    /**
+     * Reads a sequence of symbols written by {@link #writeEntropyCoded(int[], int, int, int)}.
+     *
+     * @param dest         the array to read symbols into.
+     * @param off          the index of the first symbol to read into.
+     * @param len          the number of symbols to read.
+     * @param alphabetSize the number of possible symbols the sequence was written with.
+     * @return the destination array.
+     * @throws IllegalArgumentException if the alphabet size is invalid.
+     * @throws DecoderException         if the sequence is malformed.
+     */
+    public int[] readEntropyCoded(int[] dest, int off, int len, int alphabetSize)
+        throws IllegalArgumentException, DecoderException {
+        Objects.checkFromIndexSize(off, len, dest.length);
+        checkAlphabetSize(alphabetSize);
+
+        int mode = readFixedBits(2);
+        switch (mode) {
+            case ENTROPY_SINGLE -> {
+                int symbol = readVarUnsignedInt();
+                if (symbol >= alphabetSize) throw new DecoderException("Read an out-of-alphabet symbol: " + symbol);
+                Arrays.fill(dest, off, off + len, symbol);
+            }
+            case ENTROPY_PACKED -> {
+                readPackedInts(dest, off, len, MathHelper.ceilLog2(alphabetSize));
+                for (int i = off; i < off + len; i++) {
+                    if (dest[i] >= alphabetSize) {
+                        throw new DecoderException("Read an out-of-alphabet symbol: " + dest[i]);
+                    }
+                }
+            }
+            case ENTROPY_HUFFMAN -> readHuffmanSymbols(dest, off, len, alphabetSize);
+            default -> throw new DecoderException("Read an unknown entropy coding mode: " + mode);
+        }
+
+        return dest;
+    }
+
+    private void readHuffmanSymbols(int[] dest, int off, int len, int alphabetSize) {
+        int fixedBits = MathHelper.ceilLog2(alphabetSize);
+        int[] lengths = new int[alphabetSize];
+        if (readBoolean()) {
+            int used = readVarUnsignedInt();
+            if (used > alphabetSize) throw new DecoderException("Read too many Huffman code lengths: " + used);
+            for (int i = 0; i < used; i++) {
+                int symbol = readFixedBits(fixedBits);
+                if (symbol >= alphabetSize) throw new DecoderException("Read an out-of-alphabet symbol: " + symbol);
+                lengths[symbol] = readFixedBits(ENTROPY_LENGTH_BITS);
+            }
+        } else {
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                lengths[symbol] = readFixedBits(ENTROPY_LENGTH_BITS);
+            }
+        }
+
+        int[] counts = new int[MAX_HUFFMAN_CODE_LENGTH + 1];
+        for (int length : lengths) {
+            counts[length]++;
+        }
+        counts[0] = 0;
+        int left = 1;
+        for (int length = 1; length <= MAX_HUFFMAN_CODE_LENGTH; length++) {
+            left = (left << 1) - counts[length];
+            if (left < 0) throw new DecoderException("Read an over-subscribed Huffman code");
+        }
+
+        // symbols ordered by code length, then by symbol, which is the order of their canonical codes
+        int[] offsets = new int[MAX_HUFFMAN_CODE_LENGTH + 2];
+        for (int length = 1; length <= MAX_HUFFMAN_CODE_LENGTH; length++) {
+            offsets[length + 1] = offsets[length] + counts[length];
+        }
+        int[] sorted = new int[offsets[MAX_HUFFMAN_CODE_LENGTH + 1]];
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            if (lengths[symbol] > 0) sorted[offsets[lengths[symbol]]++] = symbol;
+        }
+
+        int bits = 0;
+        int bitCount = 0;
+        for (int i = off; i < off + len; i++) {
+            int code = 0;
+            int first = 0;
+            int index = 0;
+            for (int length = 1; ; length++) {
+                if (length > MAX_HUFFMAN_CODE_LENGTH) throw new DecoderException("Read an invalid Huffman code");
+                if (bitCount == 0) {
+                    bits = readUnsignedByte();
+                    bitCount = 8;
+                }
+                bitCount--;
+                code |= (bits >>> bitCount) & 1;
+                int count = counts[length];
+                if (code - first < count) {
+                    dest[i] = sorted[index + code - first];
+                    break;
+                }
+                index += count;
+                first = (first + count) << 1;
+                code <<= 1;
+            }
+        }
+    }
+
+    private static void checkAlphabetSize(int alphabetSize) {
+        if (alphabetSize <= 0) {
+            throw new IllegalArgumentException("Tried to use an empty alphabet! (" + alphabetSize + ")");
+        }
+        if (alphabetSize > MAX_ENTROPY_ALPHABET_SIZE) {
+            throw new IllegalArgumentException(
+                "Tried to use an alphabet larger than " + MAX_ENTROPY_ALPHABET_SIZE + "! (" + alphabetSize + ")");
+        }
+    }
+
+    /**
+     * Computes Huffman code lengths of at most {@link #MAX_HUFFMAN_CODE_LENGTH} bits, by halving the frequencies and
+     * trying again whenever a code ends up too long.
+     */
+    private static int[] huffmanCodeLengths(int[] freqs, int used) {
+        int[] weights = freqs;
+        while (true) {
+            int[] lengths = huffmanCodeLengthsUnlimited(weights, used);
+            boolean fits = true;
+            for (int length : lengths) {
+                if (length > MAX_HUFFMAN_CODE_LENGTH) {
+                    fits = false;
+                    break;
+                }
+            }
+            if (fits) return lengths;
+
+            weights = weights.clone();
+            for (int symbol = 0; symbol < weights.length; symbol++) {
+                if (weights[symbol] > 0) weights[symbol] = Math.max(1, weights[symbol] >>> 1);
+            }
+        }
+    }
+
+    private static int[] huffmanCodeLengthsUnlimited(int[] weights, int used) {
+        // nodes 0 until used are leaves, the rest are internal nodes, each created after both its children
+        int[] leafSymbols = new int[used];
+        int[] parents = new int[2 * used - 1];
+        LongHeapPriorityQueue queue = new LongHeapPriorityQueue(used);
+        int leaf = 0;
+        for (int symbol = 0; symbol < weights.length; symbol++) {
+            if (weights[symbol] > 0) {
+                leafSymbols[leaf] = symbol;
+                queue.enqueue((long) weights[symbol] << 32 | leaf);
+                leaf++;
+            }
+        }
+
+        int next = used;
+        while (queue.size() > 1) {
+            long a = queue.dequeueLong();
+            long b = queue.dequeueLong();
+            parents[(int) a] = next;
+            parents[(int) b] = next;
+            queue.enqueue(((a >>> 32) + (b >>> 32)) << 32 | next);
+            next++;
+        }
+
+        int[] depths = new int[next];
+        for (int node = next - 2; node >= 0; node--) {
+            depths[node] = depths[parents[node]] + 1;
+        }
+
+        int[] lengths = new int[weights.length];
+        for (int i = 0; i < used; i++) {
+            lengths[leafSymbols[i]] = depths[i];
+        }
+        return lengths;
+    }
+
+    private static int[] canonicalCodes(int[] lengths) {
+        int[] counts = new int[MAX_HUFFMAN_CODE_LENGTH + 1];
+        for (int length : lengths) {
+            if (length > 0) counts[length]++;
+        }
+
+        int[] nextCodes = new int[MAX_HUFFMAN_CODE_LENGTH + 1];
+        int code = 0;
+        for (int length = 1; length <= MAX_HUFFMAN_CODE_LENGTH; length++) {
+            code = (code + counts[length - 1]) << 1;
+            nextCodes[length] = code;
+        }
+
+        int[] codes = new int[lengths.length];
+        for (int symbol = 0; symbol < lengths.length; symbol++) {
+            if (lengths[symbol] > 0) codes[symbol] = nextCodes[lengths[symbol]]++;
+        }
+        return codes;
+    }
+
+    private static void checkBitsPerEntry(int bitsPerEntry, int max) {
+        if (bitsPerEntry < 0) {
+            throw new IllegalArgumentException("Tried to use a negative number of bits per entry! (" + bitsPerEntry +
+                ")");
+        }
+        if (bitsPerEntry > max) {
+            throw new IllegalArgumentException(
+                "Tried to use more bits per entry than there are in the entry type! (" + bitsPerEntry + ")");
+        }
+    }
+
+    private int readBitsPerEntry(int max) {
+        int bitsPerEntry = readFixedBits(max == 32 ? 6 : 7);
+        if (bitsPerEntry > max) {
+            throw new DecoderException("Read an invalid number of bits per entry: " + bitsPerEntry);
+        }
+        return bitsPerEntry;
+    }
+
+    /**
+     * Packs entries into 64-bit words, lowest entries in the lowest bits, writing each word once it is full.
+     */
+    private static final class PackedBitsWriter {
+        private final NetByteBuf buf;
+        private final int bitsPerEntry;
+        private final long mask;
+        private long word;
+        private int wordBits;
+
+        private PackedBitsWriter(NetByteBuf buf, int bitsPerEntry) {
+            this.buf = buf;
+            this.bitsPerEntry = bitsPerEntry;
+            mask = -1L >>> (64 - bitsPerEntry);
+        }
+
+        void write(long value) {
+            long entry = value & mask;
+            word |= entry << wordBits;
+            wordBits += bitsPerEntry;
+            if (wordBits >= 64) {
+                buf.writeFixedBits(word, 64);
+                wordBits -= 64;
+                // carry the top bits of the entry that didn't fit into the next word
+                word = wordBits == 0 ? 0 : entry >>> (bitsPerEntry - wordBits);
+            }
+        }
+
+        void finish() {
+            if (wordBits > 0) {
+                buf.writeFixedBits(word, wordBits);
+                word = 0;
+                wordBits = 0;
+            }
+        }
+    }
+
+    /**
+     * Unpacks entries written by {@link PackedBitsWriter}, reading each word as it is needed.
+     */
+    private static final class PackedBitsReader {
+        private final NetByteBuf buf;
+        private final int bitsPerEntry;
+        private final long mask;
+        private long remainingBits;
+        private long word;
+        private int wordBits;
+
+        private PackedBitsReader(NetByteBuf buf, int bitsPerEntry, int len) {
+            this.buf = buf;
+            this.bitsPerEntry = bitsPerEntry;
+            mask = -1L >>> (64 - bitsPerEntry);
+            remainingBits = (long) bitsPerEntry * len;
+        }
+
+        long read() {
+            if (wordBits >= bitsPerEntry) {
+                long entry = word & mask;
+                word >>>= bitsPerEntry;
+                wordBits -= bitsPerEntry;
+                return entry;
+            }
+
+            int nextBits = (int) Math.min(64, remainingBits);
+            long next = buf.readFixedBitsLong(nextBits);
+            remainingBits -= nextBits;
+
+            // the bottom of the entry comes from what's left of the last word, the top from the next word
+            long entry = (word | (next << wordBits)) & mask;
+            int used = bitsPerEntry - wordBits;
+            word = used == 64 ? 0 : next >>> used;
+            wordBits = nextBits - used;
+            return entry;
+        }
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public NetByteBuf writeEnumConstant(Enum<?> value) {
+        if (passthrough) {
+            super.writeEnumConstant(value);
+            return this;
+        }
+        EnumCodec codec = EnumCodec.of((Class) value.getDeclaringClass());
+        if (codec.size() == 0) {
+            throw new IllegalArgumentException("Tried to write an enum value without any values! How did you do this?");
+        }
+        codec.write(this, value);
         return this;
     }
 
@@ -613,50 +2220,470 @@ public class NetByteBuf extends PacketByteBuf {
         if (passthrough) {
             return super.readEnumConstant(enumClass);
         }
-        // No need to lookup the declaring class as you cannot refer to sub-classes of Enum.
-        E[] enums = enumClass.getEnumConstants();
-        if (enums == null) {
-            throw new IllegalArgumentException("Not an enum " + enumClass);
+        // No need to lookup the declaring class as you cannot refer to sub-classes of Enum.
+        return EnumCodec.of(enumClass).read(this);
+    }
+
+    /**
+     * Writes an enum set.
+     * <p>
+     * Unlike vanilla, this writes the set as a fixed-width bitmask with one bit per constant, instead of a
+     * length-prefixed bit set.
+     * <p>
+     * <b>This is not wire-compatible with vanilla.</b> Sets written by a non-passthrough {@link NetByteBuf}, including
+     * through vanilla code calling this method, must be read back by {@link #readEnumSet(Class)} on a non-passthrough
+     * {@link NetByteBuf}, never by a plain {@link PacketByteBuf}, and vice versa. Use a {@link #passthrough} buffer to
+     * exchange data with code that uses plain {@link PacketByteBuf}s.
+     *
+     * @param enumSet the set to write.
+     * @param type    the class of the set's enum.
+     * @param <E>     the type of the set's enum.
+     * @see EnumCodec#writeSet(NetByteBuf, java.util.Set)
+     */
+    @Override
+    public <E extends Enum<E>> void writeEnumSet(EnumSet<E> enumSet, Class<E> type) {
+        if (passthrough) {
+            super.writeEnumSet(enumSet, type);
+            return;
+        }
+        EnumCodec.of(type).writeSet(this, enumSet);
+    }
+
+    /**
+     * Reads an enum set written by {@link #writeEnumSet(EnumSet, Class)}.
+     * <p>
+     * <b>This is not wire-compatible with vanilla.</b> See {@link #writeEnumSet(EnumSet, Class)}.
+     *
+     * @param type the class of the set's enum.
+     * @param <E>  the type of the set's enum.
+     * @return the set read.
+     */
+    @Override
+    public <E extends Enum<E>> EnumSet<E> readEnumSet(Class<E> type) {
+        if (passthrough) {
+            return super.readEnumSet(type);
+        }
+        return EnumCodec.of(type).readSet(this);
+    }
+
+    /**
+     * Writes out a {@link BlockPos} using 3 {@link #writeVarInt(int)}s rather than {@link BlockPos#asLong()}.
+     *
+     * @param pos the block position to write.
+     */
+    @Override
+    public NetByteBuf writeBlockPos(BlockPos pos) {
+        if (passthrough) {
+            super.writeBlockPos(pos);
+            return this;
+        }
+        writeVarInt(pos.getX());
+        writeVarInt(pos.getY());
+        writeVarInt(pos.getZ());
+        return this;
+    }
+
+    /**
+     * Reads a {@link BlockPos} using 3 {@link #readVarInt()}s rather than {@link BlockPos#fromLong(long)}.
+     *
+     * @return the read block position.
+     */
+    @Override
+    public BlockPos readBlockPos() {
+        if (passthrough) {
+            return super.readBlockPos();
+        }
+        return new BlockPos(readVarInt(), readVarInt(), readVarInt());
+    }
+
+    /**
+     * Writes a {@link BlockPos} as its offset from the given anchor position, using 3 {@link #writeVarInt(int)}s.
+     * <p>
+     * Positions within 63 blocks of the anchor on every axis take only 3 bytes.
+     *
+     * @param anchor the position the written position is relative to. The reader must use the same anchor.
+     * @param pos    the block position to write.
+     * @return this buffer.
+     * @see #readBlockPosRelative(BlockPos)
+     */
+    public NetByteBuf writeBlockPosRelative(BlockPos anchor, BlockPos pos) {
+        writeVarInt(pos.getX() - anchor.getX());
+        writeVarInt(pos.getY() - anchor.getY());
+        writeVarInt(pos.getZ() - anchor.getZ());
+        return this;
+    }
+
+    /**
+     * Reads a {@link BlockPos} written by {@link #writeBlockPosRelative(BlockPos, BlockPos)}.
+     *
+     * @param anchor the position the read position is relative to.
+     * @return the read block position.
+     */
+    public BlockPos readBlockPosRelative(BlockPos anchor) {
+        return new BlockPos(anchor.getX() + readVarInt(), anchor.getY() + readVarInt(), anchor.getZ() + readVarInt());
+    }
+
+    /**
+     * Writes a {@link BlockPos} within a chunk, using 4 bits for each of the x and z coordinates and just enough bits
+     * to cover the world's height for the y coordinate.
+     * <p>
+     * For the overworld this is 17 bits per position. The chunk itself is not written, so the reader must know which
+     * chunk the position is in, for example by writing it once with {@link #writeChunkPos(ChunkPos)} before a number
+     * of positions.
+     *
+     * @param pos    the block position to write.
+     * @param height the height limits of the world the position is in.
+     * @return this buffer.
+     * @throws IllegalArgumentException if the position is outside the world's height limits.
+     * @see #readChunkLocalBlockPos(ChunkPos, HeightLimitView)
+     */
+    public NetByteBuf writeChunkLocalBlockPos(BlockPos pos, HeightLimitView height) throws IllegalArgumentException {
+        if (height.isOutOfHeightLimit(pos)) {
+            throw new IllegalArgumentException(
+                "Tried to write a chunk-local block position outside the world's height limits! (" + pos + ")");
+        }
+        writeFixedBits(pos.getX() & 15, 4);
+        writeFixedBits(pos.getZ() & 15, 4);
+        writeFixedBits(pos.getY() - height.getBottomY(), chunkLocalYBits(height));
+        return this;
+    }
+
+    /**
+     * Reads a {@link BlockPos} written by {@link #writeChunkLocalBlockPos(BlockPos, HeightLimitView)}.
+     *
+     * @param chunk  the chunk the position is in.
+     * @param height the height limits of the world the position is in.
+     * @return the read block position.
+     */
+    public BlockPos readChunkLocalBlockPos(ChunkPos chunk, HeightLimitView height) {
+        int x = readFixedBits(4);
+        int z = readFixedBits(4);
+        int y = readFixedBits(chunkLocalYBits(height));
+        return new BlockPos(chunk.getOffsetX(x), height.getBottomY() + y, chunk.getOffsetZ(z));
+    }
+
+    private static int chunkLocalYBits(HeightLimitView height) {
+        return Math.max(1, MathHelper.ceilLog2(height.getHeight()));
+    }
+
+    /**
+     * Writes a collection of {@link BlockPos}s, sorted and delta-encoded.
+     * <p>
+     * Positions are sorted by their {@link BlockPos#asLong()} value and written with
+     * {@link #writeLongSequence(long[], int, int)}, so positions close to each other, like the blocks of a multi-block
+     * structure, only take a couple of bytes each. The original order of the positions is not preserved.
+     *
+     * @param positions the block positions to write.
+     * @return this buffer.
+     * @see #readBlockPositions()
+     */
+    public NetByteBuf writeBlockPositions(Collection<BlockPos> positions) {
+        long[] packed = new long[positions.size()];
+        int i = 0;
+        for (BlockPos pos : positions) {
+            packed[i++] = pos.asLong();
+        }
+        Arrays.sort(packed);
+
+        writeVarUnsignedInt(packed.length);
+        writeLongSequence(packed, 0, packed.length);
+        return this;
+    }
+
+    /**
+     * Reads a list of {@link BlockPos}s written by {@link #writeBlockPositions(Collection)}.
+     *
+     * @return the read block positions, in sorted order.
+     */
+    public List<BlockPos> readBlockPositions() {
+        int size = checkSequenceLength(readVarUnsignedInt());
+        long[] packed = readLongSequence(new long[size], 0, size);
+
+        List<BlockPos> positions = new ArrayList<>(size);
+        for (long l : packed) {
+            positions.add(BlockPos.fromLong(l));
+        }
+        return positions;
+    }
+
+    /**
+     * Writes a float quantized to the given number of bits over the given range.
+     * <p>
+     * The range is split into {@code 2^bits - 1} evenly spaced steps, and the value is rounded to the nearest one, so
+     * the maximum error is half of {@code (max - min) / (2^bits - 1)}. Values outside the range are clamped to it.
+     *
+     * @param value the value to write.
+     * @param min   the lowest value that can be written.
+     * @param max   the highest value that can be written.
+     * @param bits  the number of bits to write the value with, between 1 and 32.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     * @see #readQuantizedFloat(float, float, int)
+     */
+    public NetByteBuf writeQuantizedFloat(float value, float min, float max, int bits)
+        throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 32);
+        writeFixedBits(quantize(value, min, max, bits), bits);
+        return this;
+    }
+
+    /**
+     * Reads a float written by {@link #writeQuantizedFloat(float, float, float, int)}.
+     *
+     * @param min  the lowest value that could have been written.
+     * @param max  the highest value that could have been written.
+     * @param bits the number of bits the value was written with, between 1 and 32.
+     * @return the read value.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     */
+    public float readQuantizedFloat(float min, float max, int bits) throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 32);
+        return (float) dequantize(readFixedBitsLong(bits), min, max, bits);
+    }
+
+    /**
+     * Writes a double quantized to the given number of bits over the given range.
+     * <p>
+     * This works the same as {@link #writeQuantizedFloat(float, float, float, int)}.
+     *
+     * @param value the value to write.
+     * @param min   the lowest value that can be written.
+     * @param max   the highest value that can be written.
+     * @param bits  the number of bits to write the value with, between 1 and 53.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     * @see #readQuantizedDouble(double, double, int)
+     */
+    public NetByteBuf writeQuantizedDouble(double value, double min, double max, int bits)
+        throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 53);
+        writeFixedBits(quantize(value, min, max, bits), bits);
+        return this;
+    }
+
+    /**
+     * Reads a double written by {@link #writeQuantizedDouble(double, double, double, int)}.
+     *
+     * @param min  the lowest value that could have been written.
+     * @param max  the highest value that could have been written.
+     * @param bits the number of bits the value was written with, between 1 and 53.
+     * @return the read value.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     */
+    public double readQuantizedDouble(double min, double max, int bits) throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 53);
+        return dequantize(readFixedBitsLong(bits), min, max, bits);
+    }
+
+    /**
+     * Writes a {@link Vec3d}, quantizing each component to the given number of bits over the given range.
+     *
+     * @param value the vector to write.
+     * @param min   the lowest value any component can have.
+     * @param max   the highest value any component can have.
+     * @param bits  the number of bits to write each component with, between 1 and 53.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     * @see #readQuantizedVec3d(double, double, int)
+     */
+    public NetByteBuf writeQuantizedVec3d(Vec3d value, double min, double max, int bits)
+        throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 53);
+        writeFixedBits(quantize(value.x, min, max, bits), bits);
+        writeFixedBits(quantize(value.y, min, max, bits), bits);
+        writeFixedBits(quantize(value.z, min, max, bits), bits);
+        return this;
+    }
+
+    /**
+     * Reads a {@link Vec3d} written by {@link #writeQuantizedVec3d(Vec3d, double, double, int)}.
+     *
+     * @param min  the lowest value any component could have.
+     * @param max  the highest value any component could have.
+     * @param bits the number of bits each component was written with, between 1 and 53.
+     * @return the read vector.
+     * @throws IllegalArgumentException if bits is out of range or if max is not greater than min.
+     */
+    public Vec3d readQuantizedVec3d(double min, double max, int bits) throws IllegalArgumentException {
+        checkQuantized(min, max, bits, 53);
+        double x = dequantize(readFixedBitsLong(bits), min, max, bits);
+        double y = dequantize(readFixedBitsLong(bits), min, max, bits);
+        double z = dequantize(readFixedBitsLong(bits), min, max, bits);
+        return new Vec3d(x, y, z);
+    }
+
+    /**
+     * Writes a rotation using the "smallest three" encoding.
+     * <p>
+     * The rotation is normalized, then the index of its largest component is written in 2 bits, followed by the other
+     * three components, each quantized to the given number of bits. The largest component is recomputed by the
+     * reader. With 5 bits per component, a rotation takes 17 bits.
+     *
+     * @param rotation         the rotation to write.
+     * @param bitsPerComponent the number of bits to write each of the three smallest components with, between 1 and
+     *                         32.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bitsPerComponent is out of range.
+     * @see #readQuaternion(int)
+     */
+    public NetByteBuf writeQuaternion(Quaternionfc rotation, int bitsPerComponent) throws IllegalArgumentException {
+        checkQuantized(-QUATERNION_COMPONENT_MAX, QUATERNION_COMPONENT_MAX, bitsPerComponent, 32);
+
+        float x = rotation.x(), y = rotation.y(), z = rotation.z(), w = rotation.w();
+        float length = (float) Math.sqrt(x * x + y * y + z * z + w * w);
+        if (length > 0f) {
+            x /= length;
+            y /= length;
+            z /= length;
+            w /= length;
+        } else {
+            w = 1f;
+        }
+
+        int largest = 0;
+        float largestAbs = Math.abs(x);
+        if (Math.abs(y) > largestAbs) {
+            largest = 1;
+            largestAbs = Math.abs(y);
+        }
+        if (Math.abs(z) > largestAbs) {
+            largest = 2;
+            largestAbs = Math.abs(z);
         }
-        if (enums.length == 0) {
-            throw new IllegalArgumentException("Tried to read an enum value without any values! How did you do this?");
+        if (Math.abs(w) > largestAbs) {
+            largest = 3;
         }
-        if (enums.length == 1) {
-            return enums[0];
+
+        // q and -q are the same rotation, so make the largest component positive and leave out its sign
+        float[] components = {x, y, z, w};
+        float sign = components[largest] < 0f ? -1f : 1f;
+
+        writeFixedBits(largest, 2);
+        for (int i = 0; i < 4; i++) {
+            if (i == largest) continue;
+            writeFixedBits(
+                quantize(components[i] * sign, -QUATERNION_COMPONENT_MAX, QUATERNION_COMPONENT_MAX, bitsPerComponent),
+                bitsPerComponent);
         }
-        int length = MathHelper.ceilLog2(enums.length);
-        int index = readFixedBits(length);
-        return enums[index];
+        return this;
     }
 
     /**
-     * Writes out a {@link BlockPos} using 3 {@link #writeVarInt(int)}s rather than {@link BlockPos#asLong()}.
+     * Reads a rotation written by {@link #writeQuaternion(Quaternionfc, int)}.
      *
-     * @param pos the block position to write.
+     * @param bitsPerComponent the number of bits each of the three smallest components was written with, between 1
+     *                         and 32.
+     * @return the read rotation.
+     * @throws IllegalArgumentException if bitsPerComponent is out of range.
      */
-    @Override
-    public NetByteBuf writeBlockPos(BlockPos pos) {
-        if (passthrough) {
-            super.writeBlockPos(pos);
-            return this;
+    public Quaternionf readQuaternion(int bitsPerComponent) throws IllegalArgumentException {
+        checkQuantized(-QUATERNION_COMPONENT_MAX, QUATERNION_COMPONENT_MAX, bitsPerComponent, 32);
+
+        int largest = readFixedBits(2);
+        float[] components = new float[4];
+        float sumSquares = 0f;
+        for (int i = 0; i < 4; i++) {
+            if (i == largest) continue;
+            float component = (float) dequantize(readFixedBitsLong(bitsPerComponent), -QUATERNION_COMPONENT_MAX,
+                QUATERNION_COMPONENT_MAX, bitsPerComponent);
+            components[i] = component;
+            sumSquares += component * component;
         }
-        writeVarInt(pos.getX());
-        writeVarInt(pos.getY());
-        writeVarInt(pos.getZ());
+        components[largest] = (float) Math.sqrt(Math.max(0f, 1f - sumSquares));
+
+        return new Quaternionf(components[0], components[1], components[2], components[3]).normalize();
+    }
+
+    /**
+     * Writes a direction using octahedral encoding.
+     * <p>
+     * The direction is normalized and projected onto an octahedron, which is then unfolded onto a square, so that
+     * only two components need to be written. Each of these is quantized to the given number of bits. The error is
+     * roughly uniform over all directions. Zero-length vectors are written as {@code (0, 0, 1)}.
+     *
+     * @param direction        the direction to write. This does not need to be normalized.
+     * @param bitsPerComponent the number of bits to write each of the two components with, between 1 and 32.
+     * @return this buffer.
+     * @throws IllegalArgumentException if bitsPerComponent is out of range.
+     * @see #readDirection(int)
+     */
+    public NetByteBuf writeDirection(Vec3d direction, int bitsPerComponent) throws IllegalArgumentException {
+        checkQuantized(-1.0, 1.0, bitsPerComponent, 32);
+
+        double x = direction.x, y = direction.y, z = direction.z;
+        double l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        double u = 0.0, v = 0.0;
+        if (l1 > 0.0) {
+            u = x / l1;
+            v = y / l1;
+            if (z < 0.0) {
+                // fold the lower half of the octahedron out over the corners of the square
+                double foldedU = (1.0 - Math.abs(v)) * signNotZero(u);
+                v = (1.0 - Math.abs(u)) * signNotZero(v);
+                u = foldedU;
+            }
+        }
+
+        writeFixedBits(quantize(u, -1.0, 1.0, bitsPerComponent), bitsPerComponent);
+        writeFixedBits(quantize(v, -1.0, 1.0, bitsPerComponent), bitsPerComponent);
         return this;
     }
 
     /**
-     * Reads a {@link BlockPos} using 3 {@link #readVarInt()}s rather than {@link BlockPos#fromLong(long)}.
+     * Reads a direction written by {@link #writeDirection(Vec3d, int)}.
      *
-     * @return the read block position.
+     * @param bitsPerComponent the number of bits each of the two components was written with, between 1 and 32.
+     * @return the read direction, normalized.
+     * @throws IllegalArgumentException if bitsPerComponent is out of range.
      */
-    @Override
-    public BlockPos readBlockPos() {
-        if (passthrough) {
-            return super.readBlockPos();
+    public Vec3d readDirection(int bitsPerComponent) throws IllegalArgumentException {
+        checkQuantized(-1.0, 1.0, bitsPerComponent, 32);
+
+        double u = dequantize(readFixedBitsLong(bitsPerComponent), -1.0, 1.0, bitsPerComponent);
+        double v = dequantize(readFixedBitsLong(bitsPerComponent), -1.0, 1.0, bitsPerComponent);
+        double z = 1.0 - Math.abs(u) - Math.abs(v);
+        if (z < 0.0) {
+            double unfoldedU = (1.0 - Math.abs(v)) * signNotZero(u);
+            v = (1.0 - Math.abs(u)) * signNotZero(v);
+            u = unfoldedU;
         }
-        return new BlockPos(readVarInt(), readVarInt(), readVarInt());
+
+        return new Vec3d(u, v, z).normalize();
+    }
+
+    /**
+     * The largest value any of the three smallest components of a normalized quaternion can have.
+     */
+    private static final float QUATERNION_COMPONENT_MAX = (float) (1.0 / Math.sqrt(2.0));
+
+    private static void checkQuantized(double min, double max, int bits, int maxBits) {
+        if (bits <= 0) {
+            throw new IllegalArgumentException("Tried to quantize to too few bits! (" + bits + ")");
+        }
+        if (bits > maxBits) {
+            throw new IllegalArgumentException("Tried to quantize to too many bits! (" + bits + ")");
+        }
+        if (!(max > min)) {
+            throw new IllegalArgumentException("Tried to quantize over an empty range! (" + min + " to " + max + ")");
+        }
+    }
+
+    private static long quantize(double value, double min, double max, int bits) {
+        long steps = -1L >>> (64 - bits);
+        double normalized = (value - min) / (max - min);
+        // this also catches NaN
+        if (!(normalized > 0.0)) return 0;
+        if (normalized >= 1.0) return steps;
+        return Math.round(normalized * steps);
+    }
+
+    private static double dequantize(long quantized, double min, double max, int bits) {
+        long steps = -1L >>> (64 - bits);
+        return min + (max - min) * ((double) quantized / steps);
+    }
+
+    private static double signNotZero(double value) {
+        return value < 0.0 ? -1.0 : 1.0;
     }
 
     /**
@@ -705,14 +2732,91 @@ public class NetByteBuf extends PacketByteBuf {
         // 4 bytes: s000 0vvv VV VV VV -> 1vvvV 1vvvV 1vvvV 0svvV
         // 5 bytes: svvvV VV VV VV -> 1vvvV 1vvvV 1vvvV 1vvvV 0s0vV
 
-        while ((ival & ~0x3f) != 0) {
-            writeByte(0x80 | (ival & 0x7f));
-            ival >>>= 7;
-        }
-        writeByte((sign << 6) | ival);
+        // Every byte holds 7 bits, except the last, which gives up one of them to the sign.
+        int length = (32 - Integer.numberOfLeadingZeros(ival) + 7) / 7;
+        writeLEBytes(encodeVarBytes(ival, sign, length), length);
         return this;
     }
 
+    /**
+     * Spreads the given non-negative value into 7-bit groups, adding the sign and continuation bits, so that the
+     * resulting long holds the little-endian bytes of the encoded var-int.
+     *
+     * @param value  the non-negative value to encode. Must fit within {@code 7 * length - 1} bits.
+     * @param sign   the sign bit to put at the top of the last byte.
+     * @param length the number of bytes to encode into, at most 8.
+     * @return the encoded bytes, little-endian.
+     */
+    private static long encodeVarBytes(long value, long sign, int length) {
+        long x = value | (sign << (7 * length - 1));
+        x = (x & 0x000000000FFFFFFFL) | ((x & 0x00FFFFFFF0000000L) << 4);
+        x = (x & 0x00003FFF00003FFFL) | ((x & 0x0FFFC0000FFFC000L) << 2);
+        x = (x & 0x007F007F007F007FL) | ((x & 0x3F803F803F803F80L) << 1);
+        // every byte but the last gets a continuation bit
+        return x | (0x8080808080808080L & ((1L << ((length - 1) << 3)) - 1));
+    }
+
+    /**
+     * Gathers the 7-bit groups of an encoded var-int back together, undoing the sign encoding.
+     *
+     * @param word   the little-endian bytes of the var-int, with any bytes after the last one masked off.
+     * @param length the number of bytes the var-int occupies, at most 8.
+     * @return the decoded value.
+     */
+    private static long decodeVarBytes(long word, int length) {
+        long x = word;
+        x = (x & 0x007F007F007F007FL) | ((x & 0x7F007F007F007F00L) >>> 1);
+        x = (x & 0x00003FFF00003FFFL) | ((x & 0x3FFF00003FFF0000L) >>> 2);
+        x = (x & 0x000000000FFFFFFFL) | ((x & 0x0FFFFFFF00000000L) >>> 4);
+        int signShift = 7 * length - 1;
+        long value = x & ((1L << signShift) - 1);
+        return ((x >>> signShift) & 1) == 0 ? value : ~value;
+    }
+
+    /**
+     * Writes the first {@code length} little-endian bytes of the given long using as few buffer writes as possible.
+     *
+     * @param bytes  the bytes to write.
+     * @param length the number of bytes to write, between 1 and 8.
+     */
+    private void writeLEBytes(long bytes, int length) {
+        switch (length) {
+            case 1 -> writeByte((int) bytes);
+            case 2 -> writeShortLE((int) bytes);
+            case 3 -> {
+                writeShortLE((int) bytes);
+                writeByte((int) (bytes >>> 16));
+            }
+            case 4 -> writeIntLE((int) bytes);
+            case 5 -> {
+                writeIntLE((int) bytes);
+                writeByte((int) (bytes >>> 32));
+            }
+            case 6 -> {
+                writeIntLE((int) bytes);
+                writeShortLE((int) (bytes >>> 32));
+            }
+            case 7 -> {
+                writeIntLE((int) bytes);
+                writeShortLE((int) (bytes >>> 32));
+                writeByte((int) (bytes >>> 48));
+            }
+            default -> writeLongLE(bytes);
+        }
+    }
+
+    /**
+     * Finds the length of the var-int starting at the given little-endian word.
+     *
+     * @param word the next 8 bytes of the buffer, little-endian.
+     * @return the number of bytes the var-int occupies, or a number greater than 8 if the var-int does not end within
+     * the given word.
+     */
+    private static int varBytesLength(long word) {
+        // the last byte of a var-int is the first one without its continuation bit set
+        return (Long.numberOfTrailingZeros(~word & 0x8080808080808080L) >>> 3) + 1;
+    }
+
     /**
      * Reads out an integer using a variable number of bytes, assuming it was written by {@link #writeVarInt(int)}
      *
@@ -723,6 +2827,18 @@ public class NetByteBuf extends PacketByteBuf {
         if (passthrough) {
             return super.readVarInt();
         }
+
+        if (readableBytes() >= Long.BYTES) {
+            // fast path: decode the whole var-int from a single read
+            int index = readerIndex();
+            long word = getLongLE(index);
+            int length = varBytesLength(word);
+            if (length <= 5) {
+                readerIndex(index + length);
+                return (int) decodeVarBytes(word & (-1L >>> (64 - (length << 3))), length);
+            }
+        }
+
         int count = 0;
         int ival = 0;
         int read;
@@ -788,14 +2904,12 @@ public class NetByteBuf extends PacketByteBuf {
      * @param lval the long integer value to write.
      * @return this buffer.
      */
-    // TODO: Finish that!
     @Override
     public NetByteBuf writeVarLong(long lval) {
         if (passthrough) {
             super.writeVarLong(lval);
             return this;
         }
-        // Copy-pasted from writeVarInt
         final int sign;
         if (lval < 0) {
             lval = ~lval;
@@ -803,6 +2917,13 @@ public class NetByteBuf extends PacketByteBuf {
         } else {
             sign = 0;
         }
+
+        int length = (64 - Long.numberOfLeadingZeros(lval) + 7) / 7;
+        if (length <= Long.BYTES) {
+            writeLEBytes(encodeVarBytes(lval, sign, length), length);
+            return this;
+        }
+
         while ((lval & ~0x3f) != 0) {
             writeByte((int) (0x80 | (lval & 0x7f)));
             lval >>>= 7;
@@ -816,6 +2937,18 @@ public class NetByteBuf extends PacketByteBuf {
         if (passthrough) {
             return super.readVarLong();
         }
+
+        if (readableBytes() >= Long.BYTES) {
+            // fast path: decode the whole var-long from a single read if it fits
+            int index = readerIndex();
+            long word = getLongLE(index);
+            int length = varBytesLength(word);
+            if (length <= Long.BYTES) {
+                readerIndex(index + length);
+                return decodeVarBytes(word & (-1L >>> (64 - (length << 3))), length);
+            }
+        }
+
         int count = 0;
         long lval = 0;
         long read;
@@ -860,6 +2993,78 @@ public class NetByteBuf extends PacketByteBuf {
         return super.readVarLong();
     }
 
+    /**
+     * Writes a registry value using its raw id.
+     * <p>
+     * Unlike vanilla, this writes the raw id with {@link #writeVarUnsignedInt(int)}, as raw ids are never negative,
+     * so the first 128 entries of a registry take a single byte. Raw ids are kept in sync between client and server
+     * by the platform.
+     * <p>
+     * <b>This is not wire-compatible with vanilla.</b> Vanilla code calling this method on a non-passthrough buffer,
+     * like {@link PacketByteBuf#writeItemStack(net.minecraft.item.ItemStack)}, also writes the compact format, so
+     * anything written this way must be read back by {@link #readRegistryValue(IndexedIterable)} on a
+     * non-passthrough {@link NetByteBuf}, never by a plain {@link PacketByteBuf}, and vice versa. Use a
+     * {@link #passthrough} buffer to exchange data with code that uses plain {@link PacketByteBuf}s.
+     *
+     * @param registry the registry or id list the value belongs to, like {@link Block#STATE_IDS} for block states.
+     * @param value    the value to write.
+     * @param <T>      the type of value to write.
+     * @throws IllegalArgumentException if the value does not have a raw id in the given registry.
+     */
+    @Override
+    public <T> void writeRegistryValue(IndexedIterable<T> registry, T value) throws IllegalArgumentException {
+        if (passthrough) {
+            super.writeRegistryValue(registry, value);
+            return;
+        }
+        int rawId = registry.getRawId(value);
+        if (rawId == -1) {
+            throw new IllegalArgumentException("Can't find id for '" + value + "' in registry " + registry);
+        }
+        writeVarUnsignedInt(rawId);
+    }
+
+    /**
+     * Reads a registry value written by {@link #writeRegistryValue(IndexedIterable, Object)}.
+     * <p>
+     * <b>This is not wire-compatible with vanilla.</b> See {@link #writeRegistryValue(IndexedIterable, Object)}.
+     *
+     * @param registry the registry or id list the value belongs to.
+     * @param <T>      the type of value to read.
+     * @return the read value, or {@code null} if the read raw id does not exist in the given registry.
+     */
+    @Override
+    public <T> @Nullable T readRegistryValue(IndexedIterable<T> registry) {
+        if (passthrough) {
+            return super.readRegistryValue(registry);
+        }
+        return registry.get(readVarUnsignedInt());
+    }
+
+    /**
+     * Writes a {@link BlockState} using its raw id from {@link Block#STATE_IDS}.
+     *
+     * @param state the block state to write.
+     * @return this buffer.
+     */
+    public NetByteBuf writeBlockState(BlockState state) {
+        writeRegistryValue(Block.STATE_IDS, state);
+        return this;
+    }
+
+    /**
+     * Reads a {@link BlockState} written by {@link #writeBlockState(BlockState)}.
+     *
+     * @return the read block state.
+     * @throws DecoderException if the read raw id does not belong to any block state.
+     */
+    public BlockState readBlockState() throws DecoderException {
+        int rawId = readVarUnsignedInt();
+        BlockState state = Block.STATE_IDS.get(rawId);
+        if (state == null) throw new DecoderException("Read an unknown block state id: " + rawId);
+        return state;
+    }
+
     @Override
     public NetByteBuf writeIdentifier(Identifier id) {
         super.writeIdentifier(id);
@@ -893,6 +3098,319 @@ public class NetByteBuf extends PacketByteBuf {
         return readString(Short.MAX_VALUE);
     }
 
+    /**
+     * Writes a string of up to the given number of characters.
+     * <p>
+     * This writes exactly the same bytes as {@link PacketByteBuf#writeString(String, int)}, but encodes the string
+     * directly into the buffer instead of into an intermediate array. When the length prefix is guaranteed to take the
+     * same number of bytes for any encoding of the string, the space is reserved up front and the length back-patched
+     * afterward, otherwise the encoded length is counted first, with ASCII strings being copied directly.
+     *
+     * @param string    the string to write.
+     * @param maxLength the maximum number of characters the string is allowed to have.
+     * @return this buffer.
+     * @throws EncoderException if the string is longer than allowed.
+     */
+    @Override
+    public NetByteBuf writeString(String string, int maxLength) throws EncoderException {
+        int charLength = string.length();
+        if (charLength > maxLength) {
+            throw new EncoderException("String too big (was " + charLength + " characters, max " + maxLength + ")");
+        }
+
+        int maxBytes = ByteBufUtil.utf8MaxBytes(maxLength);
+        int maxEncodedLength = ByteBufUtil.utf8MaxBytes(charLength);
+        int prefixLength = VarInts.getSizeInBytes(charLength);
+        if (prefixLength == VarInts.getSizeInBytes(maxEncodedLength)) {
+            int prefixIndex = writerIndex();
+            writeZero(prefixLength);
+            int byteLength = ByteBufUtil.writeUtf8(wrapped, string);
+            if (byteLength > maxBytes) {
+                writerIndex(prefixIndex);
+                throw new EncoderException(
+                    "String too big (was " + byteLength + " bytes encoded, max " + maxBytes + ")");
+            }
+            setVanillaVarInt(prefixIndex, byteLength, prefixLength);
+        } else {
+            int byteLength = ByteBufUtil.utf8Bytes(string);
+            if (byteLength > maxBytes) {
+                throw new EncoderException(
+                    "String too big (was " + byteLength + " bytes encoded, max " + maxBytes + ")");
+            }
+            VarInts.write(wrapped, byteLength);
+            if (byteLength == charLength) {
+                ByteBufUtil.writeAscii(wrapped, string);
+            } else {
+                ByteBufUtil.writeUtf8(wrapped, string);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Writes a vanilla var-int into exactly {@code length} bytes at the given index, padding it with continuation
+     * bytes if needed.
+     */
+    private void setVanillaVarInt(int index, int value, int length) {
+        for (int i = 0; i < length - 1; i++) {
+            setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        setByte(index + length - 1, value);
+    }
+
+    /**
+     * Reads a string of up to the given number of characters.
+     * <p>
+     * This reads strings written by {@link #writeString(String, int)}. If a {@link StringCache} has been set, strings
+     * short enough for it are looked up in the cache so that repeated strings don't allocate.
+     *
+     * @param maxLength the maximum number of characters the string is allowed to have.
+     * @return the read string.
+     * @throws DecoderException if the string is longer than allowed or there are not enough readable bytes.
+     */
+    @Override
+    public String readString(int maxLength) throws DecoderException {
+        StringCache cache = stringCache;
+        if (cache == null) return super.readString(maxLength);
+
+        int maxBytes = ByteBufUtil.utf8MaxBytes(maxLength);
+        int byteLength = VarInts.read(wrapped);
+        if (byteLength > maxBytes) {
+            throw new DecoderException(
+                "The received encoded string buffer length is longer than maximum allowed (" + byteLength + " > " +
+                    maxBytes + ")");
+        }
+        if (byteLength < 0) {
+            throw new DecoderException("The received encoded string buffer length is less than zero! Weird string!");
+        }
+        int readable = readableBytes();
+        if (byteLength > readable) {
+            throw new DecoderException("Not enough bytes in buffer, expected " + byteLength + ", but got " + readable);
+        }
+
+        String string = cache.decode(wrapped, readerIndex(), byteLength);
+        skipBytes(byteLength);
+        if (string.length() > maxLength) {
+            throw new DecoderException(
+                "The received string length is longer than maximum allowed (" + string.length() + " > " + maxLength +
+                    ")");
+        }
+        return string;
+    }
+
+    /**
+     * Sets the cache used by {@link #readString(int)} to avoid allocating repeated strings.
+     *
+     * @param stringCache the cache to use, or {@code null} to decode every string.
+     * @return this buffer.
+     */
+    public NetByteBuf setStringCache(@Nullable StringCache stringCache) {
+        this.stringCache = stringCache;
+        return this;
+    }
+
+    /**
+     * Gets the cache used by {@link #readString(int)} to avoid allocating repeated strings.
+     *
+     * @return the cache used, or {@code null} if every string is decoded.
+     */
+    public @Nullable StringCache getStringCache() {
+        return stringCache;
+    }
+
+    /**
+     * Writes an NBT element in KNet's compact NBT format.
+     * <p>
+     * This streams the element directly into this buffer. Tag types are bit-packed, integers are written as var-ints,
+     * boolean bytes take no space beyond their type, and compound keys and strings repeated within the element are
+     * only written in full once. This is usually less than half the size of vanilla's NBT encoding.
+     *
+     * @param element the element to write, may be {@code null}.
+     * @return this buffer.
+     * @see #readCompactNbt()
+     * @see #readCompactNbt(NbtScanner)
+     */
+    public NetByteBuf writeCompactNbt(@Nullable NbtElement element) {
+        new CompactNbt.Writer(this).writeRoot(element);
+        return this;
+    }
+
+    /**
+     * Reads an NBT element written by {@link #writeCompactNbt(NbtElement)}.
+     *
+     * @return the element read, or {@code null} if a {@code null} element was written.
+     * @throws DecoderException if the compact NBT is malformed.
+     */
+    public @Nullable NbtElement readCompactNbt() throws DecoderException {
+        CompactNbt.Reader reader = new CompactNbt.Reader(this);
+        int type = reader.readRootType();
+        if (type == NbtElement.END_TYPE) return null;
+
+        NbtCollector collector = new NbtCollector();
+        reader.readRoot(type, collector);
+        return collector.getRoot();
+    }
+
+    /**
+     * Reads an NBT compound written by {@link #writeCompactNbt(NbtElement)}.
+     *
+     * @return the compound read, or {@code null} if a {@code null} element was written.
+     * @throws DecoderException if the compact NBT is malformed or is not a compound.
+     */
+    public @Nullable NbtCompound readCompactNbtCompound() throws DecoderException {
+        NbtElement element = readCompactNbt();
+        if (element == null || element instanceof NbtCompound) return (NbtCompound) element;
+        throw new DecoderException("Expected a compound but read compact NBT of type " + element.getType());
+    }
+
+    /**
+     * Reads an NBT element written by {@link #writeCompactNbt(NbtElement)}, passing it to the given scanner instead of
+     * building an element tree.
+     * <p>
+     * Unlike vanilla NBT scanning, the whole element is always consumed from this buffer, even if the scanner skips
+     * parts of it or halts early.
+     *
+     * @param scanner the scanner to visit the element with.
+     * @throws DecoderException if the compact NBT is malformed.
+     */
+    public void readCompactNbt(NbtScanner scanner) throws DecoderException {
+        CompactNbt.Reader reader = new CompactNbt.Reader(this);
+        reader.readRoot(reader.readRootType(), scanner);
+    }
+
+    /**
+     * Marks an interned string that is written in full and added to the intern table.
+     */
+    private static final int INTERN_NEW = -1;
+    /**
+     * Marks an interned string that is written in full but not added to the intern table, because the writer did not
+     * have one.
+     */
+    private static final int INTERN_LITERAL = -2;
+
+    /**
+     * Sets the table used by {@link #writeInternedString(String)} and {@link #readInternedString()} and their
+     * {@link Identifier} equivalents.
+     * <p>
+     * KNet sets this automatically for channels with string interning enabled.
+     *
+     * @param internTable the intern table to use, or {@code null} to write all interned strings in full.
+     * @return this buffer.
+     */
+    public NetByteBuf setInternTable(@Nullable InternTable internTable) {
+        this.internTable = internTable;
+        return this;
+    }
+
+    /**
+     * Gets the table used for interned strings, if any.
+     *
+     * @return the table used for interned strings, or {@code null} if this buffer does not have one.
+     */
+    public @Nullable InternTable getInternTable() {
+        return internTable;
+    }
+
+    /**
+     * Writes a string that is likely to be sent again, using this buffer's {@link InternTable}.
+     * <p>
+     * The first time a string is written, it is written in full and added to the table. Later, it is written as just
+     * its index in the table, usually a single byte. If this buffer does not have an intern table, the string is
+     * always written in full.
+     *
+     * @param value the string to write.
+     * @return this buffer.
+     * @see #readInternedString()
+     */
+    public NetByteBuf writeInternedString(String value) {
+        InternTable table = internTable;
+        if (table == null) {
+            writeVarInt(INTERN_LITERAL);
+            writeString(value);
+            return this;
+        }
+
+        int index = table.indexOf(value);
+        if (index >= 0) {
+            writeVarInt(index);
+        } else {
+            writeVarInt(INTERN_NEW);
+            writeString(value);
+            table.add(value);
+        }
+        return this;
+    }
+
+    /**
+     * Reads a string written by {@link #writeInternedString(String)}.
+     *
+     * @return the read string.
+     * @throws DecoderException if the string refers to an intern table entry but this buffer has no intern table or
+     *                          the entry does not exist.
+     */
+    public String readInternedString() throws DecoderException {
+        int index = readVarInt();
+        if (index == INTERN_LITERAL) return readString();
+        if (index == INTERN_NEW) {
+            String value = readString();
+            if (internTable != null) internTable.add(value);
+            return value;
+        }
+        return mustGetInternTable(index).get(index);
+    }
+
+    /**
+     * Writes an {@link Identifier} that is likely to be sent again, using this buffer's {@link InternTable}.
+     *
+     * @param id the identifier to write.
+     * @return this buffer.
+     * @see #writeInternedString(String)
+     * @see #readInternedIdentifier()
+     */
+    public NetByteBuf writeInternedIdentifier(Identifier id) {
+        return writeInternedString(id.toString());
+    }
+
+    /**
+     * Reads an {@link Identifier} written by {@link #writeInternedIdentifier(Identifier)}.
+     * <p>
+     * Identifiers read from the intern table are cached, so repeated reads of the same identifier return the same
+     * instance.
+     *
+     * @return the read identifier.
+     * @throws DecoderException if the identifier refers to an intern table entry but this buffer has no intern table
+     *                          or the entry does not exist, or if the read string was not a valid identifier.
+     */
+    public Identifier readInternedIdentifier() throws DecoderException {
+        int index = readVarInt();
+        try {
+            if (index == INTERN_LITERAL) return new Identifier(readString());
+            if (index == INTERN_NEW) {
+                String value = readString();
+                if (internTable != null) {
+                    return internTable.getIdentifier(internTable.add(value));
+                } else {
+                    return new Identifier(value);
+                }
+            }
+            return mustGetInternTable(index).getIdentifier(index);
+        } catch (InvalidIdentifierException e) {
+            throw new DecoderException("Read an invalid identifier", e);
+        }
+    }
+
+    private InternTable mustGetInternTable(int index) {
+        InternTable table = internTable;
+        if (table == null) {
+            throw new DecoderException("Read an intern table index " + index + " but this buffer has no intern table");
+        }
+        if (index < 0 || index >= table.size()) {
+            throw new DecoderException("Read an invalid intern table index " + index);
+        }
+        return table;
+    }
+
     /**
      * Writes an optional value to this buf. An optional value is represented by
      * a boolean indicating if the value is present, followed by the value only if
@@ -111,6 +111,15 @@ public class Palette<T> {
         }
     }
 
+    /**
+     * Gets the number of objects associated with keys in this palette.
+     *
+     * @return the size of this palette.
+     */
+    public int size() {
+        return palette.size();
+    }
+
     /**
      * Encodes a palette to a {@link NetByteBuf}.
      *
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.api.util;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jetbrains.annotations.NotNull;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.util.math.MathHelper;
+
+/**
+ * A bounded cache of decoded strings, letting repeated reads of low-cardinality strings, like names and keys, return
+ * the same {@link String} instance instead of allocating a new one each time.
+ * <p>
+ * Strings are looked up by hashing their encoded bytes directly in the buffer and comparing them against the cached
+ * entry's bytes, so a cache hit allocates nothing. The cache is direct-mapped, so colliding strings simply replace each
+ * other.
+ * <p>
+ * Unlike an {@link InternTable}, this cache has no effect on what is written, and so can be shared freely between
+ * connections and threads.
+ *
+ * @see NetByteBuf#setStringCache(StringCache)
+ */
+public class StringCache {
+    private final Entry[] entries;
+    private final int mask;
+    private final int maxBytes;
+
+    /**
+     * Creates a new string cache.
+     *
+     * @param capacity the number of strings this cache can hold. This is rounded up to a power of two.
+     * @param maxBytes the maximum encoded length of strings to cache. Longer strings are decoded without caching.
+     */
+    public StringCache(int capacity, int maxBytes) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("String cache capacity must be positive! (" + capacity + ")");
+        }
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("String cache max bytes must not be negative! (" + maxBytes + ")");
+        }
+        int size = MathHelper.smallestEncompassingPowerOfTwo(capacity);
+        entries = new Entry[size];
+        mask = size - 1;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the maximum encoded length of strings this cache holds.
+     *
+     * @return the maximum encoded length of cached strings.
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Decodes a UTF-8 string from the given buffer region, returning a cached instance if one exists.
+     * <p>
+     * This does not modify the buffer's reader index.
+     *
+     * @param buf    the buffer to decode from.
+     * @param index  the index of the first byte of the string.
+     * @param length the encoded length of the string.
+     * @return the decoded string.
+     */
+    public @NotNull String decode(@NotNull ByteBuf buf, int index, int length) {
+        if (length > maxBytes) {
+            return buf.toString(index, length, StandardCharsets.UTF_8);
+        }
+
+        int hash = length;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buf.getByte(index + i);
+        }
+        // spread the hash so that strings differing in their last byte don't collide
+        hash ^= hash >>> 16;
+
+        int slot = hash & mask;
+        Entry entry = entries[slot];
+        if (entry != null && entry.hash == hash && matches(entry.bytes, buf, index, length)) {
+            return entry.value;
+        }
+
+        byte[] bytes = new byte[length];
+        buf.getBytes(index, bytes);
+        String value = new String(bytes, StandardCharsets.UTF_8);
+        entries[slot] = new Entry(hash, bytes, value);
+        return value;
+    }
+
+    private static boolean matches(byte[] bytes, ByteBuf buf, int index, int length) {
+        if (bytes.length != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] != buf.getByte(index + i)) return false;
+        }
+        return true;
+    }
+
+    // entries are immutable so that racing readers always see a complete entry
+    private record Entry(int hash, byte[] bytes, String value) {}
+}
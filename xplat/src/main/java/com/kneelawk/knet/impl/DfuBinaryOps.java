@@ -0,0 +1,408 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapLike;
+
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * A {@link DynamicOps} over plain Java values that can be written straight to a {@link NetByteBuf}, so that
+ * DataFixerUpper codecs can be sent without building and serializing an NBT tree.
+ * <p>
+ * Values are {@link #EMPTY}, {@link Boolean}s, {@link Number}s, {@link String}s, {@link List}s, {@link Map}s, or
+ * {@code byte[]}, {@code int[]} and {@code long[]} arrays. Lists, maps and arrays are never modified once created.
+ * <p>
+ * Each value is written with a 4-bit type tag, so booleans take 4 bits, integers are written as var-ints, and map
+ * keys are written as plain values without any NBT framing.
+ */
+final class DfuBinaryOps implements DynamicOps<Object> {
+    static final DfuBinaryOps INSTANCE = new DfuBinaryOps();
+
+    static final Object EMPTY = new Object() {
+        @Override
+        public String toString() {
+            return "empty";
+        }
+    };
+
+    private static final int TAG_BITS = 4;
+    private static final int TAG_EMPTY = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_BYTE = 3;
+    private static final int TAG_SHORT = 4;
+    private static final int TAG_INT = 5;
+    private static final int TAG_LONG = 6;
+    private static final int TAG_FLOAT = 7;
+    private static final int TAG_DOUBLE = 8;
+    private static final int TAG_STRING = 9;
+    private static final int TAG_LIST = 10;
+    private static final int TAG_MAP = 11;
+    private static final int TAG_BYTE_ARRAY = 12;
+    private static final int TAG_INT_ARRAY = 13;
+    private static final int TAG_LONG_ARRAY = 14;
+
+    private static final int MAX_DEPTH = 512;
+
+    private DfuBinaryOps() {}
+
+    static void write(NetByteBuf buf, Object value) {
+        write(buf, value, 0);
+    }
+
+    private static void write(NetByteBuf buf, Object value, int depth) {
+        if (depth > MAX_DEPTH) throw new EncoderException("Value nested deeper than " + MAX_DEPTH);
+
+        if (value == EMPTY) {
+            buf.writeFixedBits(TAG_EMPTY, TAG_BITS);
+        } else if (value instanceof Boolean b) {
+            buf.writeFixedBits(b ? TAG_TRUE : TAG_FALSE, TAG_BITS);
+        } else if (value instanceof Byte b) {
+            buf.writeFixedBits(TAG_BYTE, TAG_BITS);
+            buf.writeByte(b);
+        } else if (value instanceof Short s) {
+            buf.writeFixedBits(TAG_SHORT, TAG_BITS);
+            buf.writeShort(s);
+        } else if (value instanceof Integer i) {
+            buf.writeFixedBits(TAG_INT, TAG_BITS);
+            buf.writeVarInt(i);
+        } else if (value instanceof Long l) {
+            buf.writeFixedBits(TAG_LONG, TAG_BITS);
+            buf.writeVarLong(l);
+        } else if (value instanceof Float f) {
+            buf.writeFixedBits(TAG_FLOAT, TAG_BITS);
+            buf.writeFloat(f);
+        } else if (value instanceof Number n) {
+            buf.writeFixedBits(TAG_DOUBLE, TAG_BITS);
+            buf.writeDouble(n.doubleValue());
+        } else if (value instanceof String s) {
+            buf.writeFixedBits(TAG_STRING, TAG_BITS);
+            buf.writeString(s);
+        } else if (value instanceof List<?> list) {
+            buf.writeFixedBits(TAG_LIST, TAG_BITS);
+            buf.writeVarUnsignedInt(list.size());
+            for (Object element : list) {
+                write(buf, element, depth + 1);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            buf.writeFixedBits(TAG_MAP, TAG_BITS);
+            buf.writeVarUnsignedInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(buf, entry.getKey(), depth + 1);
+                write(buf, entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof byte[] bytes) {
+            buf.writeFixedBits(TAG_BYTE_ARRAY, TAG_BITS);
+            buf.writeByteArray(bytes);
+        } else if (value instanceof int[] ints) {
+            buf.writeFixedBits(TAG_INT_ARRAY, TAG_BITS);
+            buf.writeVarUnsignedInt(ints.length);
+            for (int i : ints) {
+                buf.writeVarInt(i);
+            }
+        } else if (value instanceof long[] longs) {
+            buf.writeFixedBits(TAG_LONG_ARRAY, TAG_BITS);
+            buf.writeVarUnsignedInt(longs.length);
+            for (long l : longs) {
+                buf.writeVarLong(l);
+            }
+        } else {
+            throw new EncoderException("Unknown value: " + value);
+        }
+    }
+
+    static Object read(NetByteBuf buf) {
+        return read(buf, 0);
+    }
+
+    private static Object read(NetByteBuf buf, int depth) {
+        if (depth > MAX_DEPTH) throw new DecoderException("Value nested deeper than " + MAX_DEPTH);
+
+        int tag = buf.readFixedBits(TAG_BITS);
+        return switch (tag) {
+            case TAG_EMPTY -> EMPTY;
+            case TAG_FALSE -> Boolean.FALSE;
+            case TAG_TRUE -> Boolean.TRUE;
+            case TAG_BYTE -> buf.readByte();
+            case TAG_SHORT -> buf.readShort();
+            case TAG_INT -> buf.readVarInt();
+            case TAG_LONG -> buf.readVarLong();
+            case TAG_FLOAT -> buf.readFloat();
+            case TAG_DOUBLE -> buf.readDouble();
+            case TAG_STRING -> buf.readString();
+            case TAG_LIST -> {
+                // every element takes at least a tag
+                int size = readSize(buf, buf.readableBytes() * 2L + 1);
+                List<Object> list = new ArrayList<>(Math.min(size, buf.readableBytes()));
+                for (int i = 0; i < size; i++) {
+                    list.add(read(buf, depth + 1));
+                }
+                yield list;
+            }
+            case TAG_MAP -> {
+                int size = readSize(buf, buf.readableBytes() + 1L);
+                Map<Object, Object> map = new LinkedHashMap<>(Math.min(size, buf.readableBytes()));
+                for (int i = 0; i < size; i++) {
+                    map.put(read(buf, depth + 1), read(buf, depth + 1));
+                }
+                yield map;
+            }
+            case TAG_BYTE_ARRAY -> buf.readByteArray();
+            case TAG_INT_ARRAY -> {
+                int[] ints = new int[readSize(buf, buf.readableBytes())];
+                for (int i = 0; i < ints.length; i++) {
+                    ints[i] = buf.readVarInt();
+                }
+                yield ints;
+            }
+            case TAG_LONG_ARRAY -> {
+                long[] longs = new long[readSize(buf, buf.readableBytes())];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = buf.readVarLong();
+                }
+                yield longs;
+            }
+            default -> throw new DecoderException("Read an unknown value tag: " + tag);
+        };
+    }
+
+    private static int readSize(NetByteBuf buf, long max) {
+        int size = buf.readVarUnsignedInt();
+        if (size < 0 || size > max) {
+            throw new DecoderException("Read a size larger than the payload could hold: " + size);
+        }
+        return size;
+    }
+
+    @Override
+    public Object empty() {
+        return EMPTY;
+    }
+
+    @Override
+    public <U> U convertTo(DynamicOps<U> outOps, Object input) {
+        if (input == EMPTY) return outOps.empty();
+        if (input instanceof Boolean b) return outOps.createBoolean(b);
+        if (input instanceof Byte b) return outOps.createByte(b);
+        if (input instanceof Short s) return outOps.createShort(s);
+        if (input instanceof Integer i) return outOps.createInt(i);
+        if (input instanceof Long l) return outOps.createLong(l);
+        if (input instanceof Float f) return outOps.createFloat(f);
+        if (input instanceof Double d) return outOps.createDouble(d);
+        if (input instanceof Number n) return outOps.createNumeric(n);
+        if (input instanceof String s) return outOps.createString(s);
+        if (input instanceof List<?>) return convertList(outOps, input);
+        if (input instanceof Map<?, ?>) return convertMap(outOps, input);
+        if (input instanceof byte[] bytes) return outOps.createByteList(ByteBuffer.wrap(bytes));
+        if (input instanceof int[] ints) return outOps.createIntList(IntStream.of(ints));
+        if (input instanceof long[] longs) return outOps.createLongList(LongStream.of(longs));
+        throw new IllegalStateException("Unknown value: " + input);
+    }
+
+    @Override
+    public DataResult<Number> getNumberValue(Object input) {
+        if (input instanceof Number n) return DataResult.success(n);
+        if (input instanceof Boolean b) return DataResult.success(b ? 1 : 0);
+        return DataResult.error(() -> "Not a number: " + input);
+    }
+
+    @Override
+    public Object createNumeric(Number i) {
+        return i;
+    }
+
+    @Override
+    public DataResult<Boolean> getBooleanValue(Object input) {
+        if (input instanceof Boolean b) return DataResult.success(b);
+        if (input instanceof Number n) return DataResult.success(n.byteValue() != 0);
+        return DataResult.error(() -> "Not a boolean: " + input);
+    }
+
+    @Override
+    public Object createBoolean(boolean value) {
+        return value;
+    }
+
+    @Override
+    public DataResult<String> getStringValue(Object input) {
+        if (input instanceof String s) return DataResult.success(s);
+        return DataResult.error(() -> "Not a string: " + input);
+    }
+
+    @Override
+    public Object createString(String value) {
+        return value;
+    }
+
+    @Override
+    public DataResult<Object> mergeToList(Object list, Object value) {
+        return copyList(list).map(copy -> {
+            copy.add(value);
+            return copy;
+        });
+    }
+
+    @Override
+    public DataResult<Object> mergeToList(Object list, List<Object> values) {
+        return copyList(list).map(copy -> {
+            copy.addAll(values);
+            return copy;
+        });
+    }
+
+    private DataResult<List<Object>> copyList(Object list) {
+        if (list == EMPTY) return DataResult.success(new ArrayList<>());
+        if (list instanceof List<?> existing) return DataResult.success(new ArrayList<>(existing));
+        return DataResult.error(() -> "Not a list: " + list);
+    }
+
+    @Override
+    public DataResult<Object> mergeToMap(Object map, Object key, Object value) {
+        return copyMap(map).map(copy -> {
+            copy.put(key, value);
+            return copy;
+        });
+    }
+
+    @Override
+    public DataResult<Object> mergeToMap(Object map, Map<Object, Object> values) {
+        return copyMap(map).map(copy -> {
+            copy.putAll(values);
+            return copy;
+        });
+    }
+
+    @Override
+    public DataResult<Object> mergeToMap(Object map, MapLike<Object> values) {
+        return copyMap(map).map(copy -> {
+            values.entries().forEach(entry -> copy.put(entry.getFirst(), entry.getSecond()));
+            return copy;
+        });
+    }
+
+    private DataResult<Map<Object, Object>> copyMap(Object map) {
+        if (map == EMPTY) return DataResult.success(new LinkedHashMap<>());
+        if (map instanceof Map<?, ?> existing) return DataResult.success(new LinkedHashMap<>(existing));
+        return DataResult.error(() -> "Not a map: " + map);
+    }
+
+    @Override
+    public DataResult<Stream<Pair<Object, Object>>> getMapValues(Object input) {
+        if (input instanceof Map<?, ?> map) {
+            return DataResult.success(map.entrySet().stream().map(entry -> Pair.of(entry.getKey(), entry.getValue())));
+        }
+        return DataResult.error(() -> "Not a map: " + input);
+    }
+
+    @Override
+    public Object createMap(Stream<Pair<Object, Object>> map) {
+        Map<Object, Object> created = new LinkedHashMap<>();
+        map.forEach(pair -> created.put(pair.getFirst(), pair.getSecond()));
+        return created;
+    }
+
+    @Override
+    public DataResult<Stream<Object>> getStream(Object input) {
+        if (input instanceof List<?> list) return DataResult.success(list.stream().map(Object.class::cast));
+        if (input instanceof byte[] bytes) {
+            return DataResult.success(IntStream.range(0, bytes.length).mapToObj(i -> bytes[i]));
+        }
+        if (input instanceof int[] ints) return DataResult.success(IntStream.of(ints).mapToObj(Integer::valueOf));
+        if (input instanceof long[] longs) return DataResult.success(LongStream.of(longs).mapToObj(Long::valueOf));
+        return DataResult.error(() -> "Not a list: " + input);
+    }
+
+    @Override
+    public Object createList(Stream<Object> input) {
+        return input.collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+    }
+
+    @Override
+    public DataResult<ByteBuffer> getByteBuffer(Object input) {
+        if (input instanceof byte[] bytes) return DataResult.success(ByteBuffer.wrap(bytes));
+        return DynamicOps.super.getByteBuffer(input);
+    }
+
+    @Override
+    public Object createByteList(ByteBuffer input) {
+        byte[] bytes = new byte[input.remaining()];
+        input.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public DataResult<IntStream> getIntStream(Object input) {
+        if (input instanceof int[] ints) return DataResult.success(IntStream.of(ints));
+        return DynamicOps.super.getIntStream(input);
+    }
+
+    @Override
+    public Object createIntList(IntStream input) {
+        return input.toArray();
+    }
+
+    @Override
+    public DataResult<LongStream> getLongStream(Object input) {
+        if (input instanceof long[] longs) return DataResult.success(LongStream.of(longs));
+        return DynamicOps.super.getLongStream(input);
+    }
+
+    @Override
+    public Object createLongList(LongStream input) {
+        return input.toArray();
+    }
+
+    @Override
+    public Object remove(Object input, String key) {
+        if (input instanceof Map<?, ?> map && map.containsKey(key)) {
+            Map<Object, Object> copy = new LinkedHashMap<>(map);
+            copy.remove(key);
+            return copy;
+        }
+        return input;
+    }
+
+    @Override
+    public String toString() {
+        return "KNet binary";
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
+
+import com.kneelawk.knet.api.channel.context.PayloadCodec;
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * Builds {@link PayloadCodec}s out of DataFixerUpper {@link Codec}s.
+ * <p>
+ * Codecs are run against {@link DfuBinaryOps}, whose values are plain Java objects written straight to the buffer,
+ * so no NBT tree is built or serialized. Codecs built from a {@link MapCodec}, like those made with
+ * {@code RecordCodecBuilder}, have their keys looked up once. Their fields are then collected by key index instead of
+ * into a map, and written in key order behind a presence bit each, so no key names are sent. On decode, the fields
+ * are handed back to the codec by index the same way.
+ */
+public final class DfuPayloadCodecs {
+    private DfuPayloadCodecs() {}
+
+    private static final DfuBinaryOps OPS = DfuBinaryOps.INSTANCE;
+
+    // values only hold their codecs weakly so that codecs that are no longer used can be collected
+    private static final Map<Codec<?>, WeakReference<PayloadCodec<?>>> CACHE =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    @SuppressWarnings("unchecked")
+    public static <T> PayloadCodec<T> fromCodec(Codec<T> codec) {
+        WeakReference<PayloadCodec<?>> ref = CACHE.get(codec);
+        PayloadCodec<?> cached = ref == null ? null : ref.get();
+        if (cached != null) return (PayloadCodec<T>) cached;
+
+        PayloadCodec<T> compiled = compile(codec);
+        CACHE.put(codec, new WeakReference<>(compiled));
+        return compiled;
+    }
+
+    private static <T> PayloadCodec<T> compile(Codec<T> codec) {
+        if (codec instanceof MapCodec.MapCodecCodec<T> mapCodecCodec) {
+            String[] keys = mapCodecCodec.codec().keys(OPS).map(key -> OPS.getStringValue(key).result().orElse(null))
+                .filter(Objects::nonNull).distinct().toArray(String[]::new);
+            if (keys.length > 0) return positional(mapCodecCodec.codec(), keys);
+        }
+
+        return new PayloadCodec<>((buf, value) -> DfuBinaryOps.write(buf, unwrap(codec.encodeStart(OPS, value),
+                message -> new EncoderException("Failed to encode " + value + ": " + message))),
+            buf -> unwrap(codec.parse(OPS, DfuBinaryOps.read(buf)),
+                message -> new DecoderException("Failed to decode: " + message)));
+    }
+
+    private static <T> PayloadCodec<T> positional(MapCodec<T> codec, String[] keys) {
+        Object2IntMap<String> indices = new Object2IntOpenHashMap<>(keys.length);
+        indices.defaultReturnValue(-1);
+        for (int i = 0; i < keys.length; i++) {
+            indices.put(keys[i], i);
+        }
+
+        return new PayloadCodec<>((buf, value) -> {
+            RecordBuilder<Object> builder = codec.encode(value, OPS, new FieldsBuilder(indices, keys.length));
+            Fields fields = unwrap(builder.build(OPS.empty()),
+                message -> new EncoderException("Failed to encode " + value + ": " + message));
+
+            for (Object field : fields.values) {
+                buf.writeBoolean(field != null);
+            }
+            for (Object field : fields.values) {
+                if (field != null) DfuBinaryOps.write(buf, field);
+            }
+
+            // keys that can't be known ahead of time, like those of dispatched or unbounded map fields, are written
+            // with their names
+            buf.writeBoolean(fields.rest != null);
+            if (fields.rest != null) DfuBinaryOps.write(buf, fields.rest);
+        }, buf -> {
+            Object[] values = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                // present values are filled in below, and anything non-null marks them as such until then
+                if (buf.readBoolean()) values[i] = DfuBinaryOps.EMPTY;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (values[i] != null) values[i] = DfuBinaryOps.read(buf);
+            }
+
+            Map<?, ?> rest = null;
+            if (buf.readBoolean()) {
+                if (!(DfuBinaryOps.read(buf) instanceof Map<?, ?> map)) {
+                    throw new DecoderException("Read extra fields that are not a map");
+                }
+                rest = map;
+            }
+
+            return unwrap(codec.decode(OPS, new FieldsMapLike(keys, indices, values, rest)),
+                message -> new DecoderException("Failed to decode: " + message));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R unwrap(DataResult<?> result, Function<String, RuntimeException> error) {
+        Optional<?> value = result.result();
+        if (value.isPresent()) return (R) value.get();
+        throw error.apply(result.error().map(DataResult.PartialResult::message).orElse("unknown error"));
+    }
+
+    private static final class Fields {
+        private Object @Nullable [] values;
+        private @Nullable Map<Object, Object> rest;
+    }
+
+    private static final class FieldsBuilder extends RecordBuilder.AbstractStringBuilder<Object, Fields> {
+        private final Object2IntMap<String> indices;
+        private final int size;
+
+        private FieldsBuilder(Object2IntMap<String> indices, int size) {
+            super(OPS);
+            this.indices = indices;
+            this.size = size;
+        }
+
+        // called from the super constructor, before this builder's fields are set
+        @Override
+        protected Fields initBuilder() {
+            return new Fields();
+        }
+
+        @Override
+        protected Fields append(String key, Object value, Fields builder) {
+            int index = indices.getInt(key);
+            if (index >= 0) {
+                if (builder.values == null) builder.values = new Object[size];
+                builder.values[index] = value;
+            } else {
+                if (builder.rest == null) builder.rest = new LinkedHashMap<>();
+                builder.rest.put(key, value);
+            }
+            return builder;
+        }
+
+        @Override
+        protected DataResult<Object> build(Fields builder, Object prefix) {
+            if (prefix != OPS.empty()) return DataResult.error(() -> "Fields can't be merged into " + prefix);
+            if (builder.values == null) builder.values = new Object[size];
+            return DataResult.success(builder);
+        }
+    }
+
+    private record FieldsMapLike(String[] keys, Object2IntMap<String> indices, Object[] values,
+                                 @Nullable Map<?, ?> rest) implements MapLike<Object> {
+        @Override
+        public @Nullable Object get(Object key) {
+            return key instanceof String str ? get(str) : null;
+        }
+
+        @Override
+        public @Nullable Object get(String key) {
+            int index = indices.getInt(key);
+            if (index >= 0) return values[index];
+            return rest == null ? null : rest.get(key);
+        }
+
+        @Override
+        public Stream<Pair<Object, Object>> entries() {
+            Stream<Pair<Object, Object>> known = IntStream.range(0, keys.length).filter(i -> values[i] != null)
+                .mapToObj(i -> Pair.of(keys[i], values[i]));
+            if (rest == null) return known;
+            return Stream.concat(known,
+                rest.entrySet().stream().map(entry -> Pair.of((Object) entry.getKey(), (Object) entry.getValue())));
+        }
+    }
+}
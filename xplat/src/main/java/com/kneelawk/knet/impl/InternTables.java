@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.util.Identifier;
+
+import com.kneelawk.knet.api.channel.Channel;
+import com.kneelawk.knet.api.channel.NetPayload;
+import com.kneelawk.knet.api.handling.PayloadHandlingDisconnectException;
+import com.kneelawk.knet.api.util.InternTable;
+import com.kneelawk.knet.api.util.NetByteBuf;
+import com.kneelawk.knet.impl.platform.KNetPlatform;
+
+/**
+ * Holds the per-connection string intern tables for channels that have interning enabled.
+ * <p>
+ * Connections are keyed by their network handler (or netty channel), weakly, so tables are dropped along with the
+ * connection.
+ * <p>
+ * Outbound payloads are encoded and handed to the platform while holding a per-connection lock, so payloads sent to
+ * the same connection from different threads are enqueued in the same order that they updated the table in. If an
+ * inbound payload fails to decode, the receiving table can no longer be trusted to match the sender's, so both of the
+ * connection's tables are dropped and the connection is disconnected.
+ */
+public final class InternTables {
+    private InternTables() {}
+
+    private static final Map<Object, Map<Identifier, InternTable>> OUTBOUND =
+        Collections.synchronizedMap(new WeakHashMap<>());
+    private static final Map<Object, Map<Identifier, InternTable>> INBOUND =
+        Collections.synchronizedMap(new WeakHashMap<>());
+
+    public static InternTable getInbound(Object connection, Identifier channel, int capacity) {
+        return get(INBOUND, connection, channel, capacity);
+    }
+
+    public static InternTable getOutbound(Object connection, Identifier channel, int capacity) {
+        return get(OUTBOUND, connection, channel, capacity);
+    }
+
+    private static InternTable get(Map<Object, Map<Identifier, InternTable>> tables, Object connection,
+                                   Identifier channel, int capacity) {
+        Map<Identifier, InternTable> connectionTables = getConnectionTables(tables, connection);
+        synchronized (connectionTables) {
+            return connectionTables.computeIfAbsent(channel, k -> new InternTable(capacity));
+        }
+    }
+
+    private static Map<Identifier, InternTable> getConnectionTables(Map<Object, Map<Identifier, InternTable>> tables,
+                                                                    Object connection) {
+        synchronized (tables) {
+            return tables.computeIfAbsent(connection, k -> new HashMap<>());
+        }
+    }
+
+    /**
+     * Drops both the inbound and outbound tables of a connection.
+     *
+     * @param connection the connection whose tables to drop.
+     */
+    public static void reset(Object connection) {
+        INBOUND.remove(connection);
+        OUTBOUND.remove(connection);
+    }
+
+    /**
+     * Encodes a payload for sending to a single player, using that player's connection's intern table, and sends it.
+     * <p>
+     * Payloads must be encoded at the time they are sent, so that both sides apply intern table changes in the same
+     * order. The sender is called while holding the connection's lock, so it must enqueue the payload right away.
+     *
+     * @param player   the player the payload is being sent to, or the local player if sending to the server.
+     * @param capacity the capacity of the channel's intern tables. If this is 0, the payload is sent unchanged.
+     * @param payload  the payload to encode.
+     * @param sender   sends the encoded payload.
+     */
+    public static void sendFor(PlayerEntity player, int capacity, NetPayload payload, Consumer<CustomPayload> sender) {
+        if (capacity <= 0) {
+            sender.accept(payload);
+            return;
+        }
+        Object connection = player instanceof ServerPlayerEntity serverPlayer ? serverPlayer.networkHandler :
+            KNetPlatform.INSTANCE.getServerConnectionKey();
+        send(connection, capacity, payload, sender);
+    }
+
+    /**
+     * Encodes a payload for sending to the server, using the server connection's intern table, and sends it.
+     *
+     * @param capacity the capacity of the channel's intern tables. If this is 0, the payload is sent unchanged.
+     * @param payload  the payload to encode.
+     * @param sender   sends the encoded payload.
+     * @see #sendFor(PlayerEntity, int, NetPayload, Consumer)
+     */
+    public static void sendForServer(int capacity, NetPayload payload, Consumer<CustomPayload> sender) {
+        if (capacity <= 0) {
+            sender.accept(payload);
+            return;
+        }
+        send(KNetPlatform.INSTANCE.getServerConnectionKey(), capacity, payload, sender);
+    }
+
+    private static void send(@Nullable Object connection, int capacity, NetPayload payload,
+                             Consumer<CustomPayload> sender) {
+        if (connection == null) {
+            sender.accept(payload);
+            return;
+        }
+
+        Map<Identifier, InternTable> connectionTables = getConnectionTables(OUTBOUND, connection);
+        synchronized (connectionTables) {
+            InternTable table = connectionTables.computeIfAbsent(payload.id(), k -> new InternTable(capacity));
+            byte[] bytes = PayloadEncoding.encodeToBytes(payload, table);
+            sender.accept(new EncodedPayload(payload.id(), bytes));
+        }
+    }
+
+    /**
+     * Reads a payload received on a channel, using the connection's inbound intern table if the channel has interning
+     * enabled.
+     *
+     * @param channel    the channel the payload was received on.
+     * @param buf        the received payload data.
+     * @param connection the connection the payload was received from.
+     * @return the read payload.
+     * @throws PayloadHandlingDisconnectException if the payload could not be read on a channel with interning enabled,
+     *                                            in which case the connection's tables have been dropped.
+     */
+    public static NetPayload read(Channel channel, NetByteBuf buf, Object connection)
+        throws PayloadHandlingDisconnectException {
+        int capacity = channel.getInternCapacity();
+        if (capacity <= 0) return channel.getReader().apply(buf);
+
+        buf.setInternTable(getInbound(connection, channel.getId(), capacity));
+        try {
+            return channel.getReader().apply(buf);
+        } catch (DecoderException | IndexOutOfBoundsException e) {
+            // the table may have been partially updated, so later payloads would silently decode to the wrong strings
+            reset(connection);
+            throw new PayloadHandlingDisconnectException("Intern table out of sync: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import net.minecraft.network.packet.CustomPayload;
+
+import com.kneelawk.knet.api.channel.NetPayload;
+import com.kneelawk.knet.api.util.InternTable;
+import com.kneelawk.knet.api.util.NetByteBuf;
+
+/**
+ * Encodes outbound payloads straight into buffers pre-sized by {@link PayloadSizes}, so that encoding rarely has to
+ * grow a buffer.
+ * <p>
+ * The encoded bytes are handed to the platform, which only writes them into the packet later, possibly on another
+ * thread, and skips serialization entirely for local connections, so there is no reliable point at which a pooled
+ * buffer could be released. Payloads are therefore encoded into unpooled heap buffers that are handed over as-is.
+ * <p>
+ * Payloads sent to multiple players are encoded once with {@link #preEncode(CustomPayload)}, so that each connection
+ * only copies the encoded bytes instead of running the payload's whole write logic again.
+ */
+public final class PayloadEncoding {
+    private PayloadEncoding() {}
+
+    public static NetByteBuf encodeToBuffer(CustomPayload payload) {
+        if (payload instanceof EncodedPayload encoded) {
+            return NetByteBuf.asNetByteBuf(Unpooled.wrappedBuffer(encoded.bytes()));
+        }
+
+        return write(payload, null);
+    }
+
+    public static byte[] encodeToBytes(CustomPayload payload, @Nullable InternTable internTable) {
+        NetByteBuf buf = write(payload, internTable);
+        // only copies if the buffer's capacity didn't match the encoded size exactly
+        return ByteBufUtil.getBytes(buf, buf.readerIndex(), buf.readableBytes(), false);
+    }
+
+    public static EncodedPayload preEncode(CustomPayload payload) {
+        if (payload instanceof EncodedPayload encoded) return encoded;
+        return new EncodedPayload(payload.id(), encodeToBytes(payload, null));
+    }
+
+    private static NetByteBuf write(CustomPayload payload, @Nullable InternTable internTable) {
+        int estimate = PayloadSizes.estimate(payload);
+        NetByteBuf buf = NetByteBuf.buffer(PayloadSizes.initialCapacity(payload, estimate));
+        buf.setInternTable(internTable);
+        if (payload instanceof NetPayload netPayload) {
+            netPayload.write(buf);
+        } else {
+            payload.write(buf);
+        }
+        PayloadSizes.record(payload, estimate, buf.readableBytes());
+        return buf;
+    }
+}
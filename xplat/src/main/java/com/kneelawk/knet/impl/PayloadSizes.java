@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.minecraft.network.packet.CustomPayload;
+import net.minecraft.util.Identifier;
+
+import com.kneelawk.knet.api.channel.NetPayload;
+
+/**
+ * Picks initial buffer capacities for encoding payloads, using each payload's own estimate if it has one, or a moving
+ * average of recent sizes of payloads with the same id otherwise.
+ */
+public final class PayloadSizes {
+    private PayloadSizes() {}
+
+    private static final int DEFAULT_CAPACITY = 256;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 20;
+    // averages are kept in fixed-point, with this many fractional bits
+    private static final int FRACTION_BITS = 4;
+    // each new size moves the average 1/8th of the way towards itself
+    private static final int SMOOTHING_SHIFT = 3;
+
+    private static final Map<Identifier, AtomicInteger> AVERAGES = new ConcurrentHashMap<>();
+
+    // callers pass this on to both initialCapacity and record, as estimates may be expensive to compute
+    public static int estimate(CustomPayload payload) {
+        return payload instanceof NetPayload netPayload ? netPayload.estimateSize() : -1;
+    }
+
+    public static int initialCapacity(CustomPayload payload, int estimate) {
+        if (estimate >= 0) return Math.min(estimate, MAX_INITIAL_CAPACITY);
+
+        AtomicInteger average = AVERAGES.get(payload.id());
+        if (average == null) return DEFAULT_CAPACITY;
+
+        int size = average.get() >>> FRACTION_BITS;
+        // leave some headroom so payloads slightly above average don't need to grow
+        return Math.min(size + (size >>> 2), MAX_INITIAL_CAPACITY);
+    }
+
+    public static void record(CustomPayload payload, int estimate, int size) {
+        if (estimate >= 0) return;
+
+        int fixed = Math.min(size, MAX_INITIAL_CAPACITY) << FRACTION_BITS;
+        AtomicInteger average = AVERAGES.computeIfAbsent(payload.id(), id -> new AtomicInteger(fixed));
+        // lost updates from racing senders only make the average slightly less smooth, which is fine
+        int old = average.get();
+        average.set(old + ((fixed - old) >> SMOOTHING_SHIFT));
+    }
+}
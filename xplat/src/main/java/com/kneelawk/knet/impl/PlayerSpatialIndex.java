@@ -0,0 +1,233 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.knet.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMaps;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.Box;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.MathHelper;
+import net.minecraft.util.math.Vec3d;
+
+/**
+ * Indexes the players of a server world by the chunk column they are in, so that proximity queries only have to look
+ * at the players in nearby chunks instead of every player in the world.
+ * <p>
+ * Indices are updated at the end of every world tick, when only players that changed chunks are moved. Queries always
+ * filter by players' current positions, and search one extra chunk in every direction, so players that moved since the
+ * last update are still found. If the number of players in the world changed since the last update, the index is
+ * updated before answering a query. Indices are also updated whenever a player changes worlds or respawns, so players
+ * that swapped worlds are found even when the player count stays the same.
+ * <p>
+ * Players that teleported more than a chunk within their world since the last update may still be missed until the
+ * end of the current world tick.
+ * <p>
+ * Indices are only meant to be used on the server thread.
+ */
+public final class PlayerSpatialIndex {
+    private static final Map<ServerWorld, PlayerSpatialIndex> INDICES = new WeakHashMap<>();
+
+    public static PlayerSpatialIndex get(ServerWorld world) {
+        PlayerSpatialIndex index = INDICES.computeIfAbsent(world, PlayerSpatialIndex::new);
+        if (index.players.size() != world.getPlayers().size()) index.update();
+        return index;
+    }
+
+    public static void onWorldTick(ServerWorld world) {
+        // indices are only created once something queries them
+        PlayerSpatialIndex index = INDICES.get(world);
+        if (index != null) index.update();
+    }
+
+    public static void onPlayerChangedWorld(ServerPlayerEntity player) {
+        PlayerSpatialIndex index = INDICES.get(player.getServerWorld());
+        if (index != null) index.update();
+    }
+
+    public static void onWorldUnload(ServerWorld world) {
+        INDICES.remove(world);
+    }
+
+    private final ServerWorld world;
+    private final Reference2ObjectMap<ServerPlayerEntity, Tracked> players = new Reference2ObjectOpenHashMap<>();
+    private final Long2ObjectMap<List<ServerPlayerEntity>> cells = new Long2ObjectOpenHashMap<>();
+    private int updateCount = 0;
+
+    private PlayerSpatialIndex(ServerWorld world) {
+        this.world = world;
+        update();
+    }
+
+    private void update() {
+        int stamp = ++updateCount;
+        List<ServerPlayerEntity> worldPlayers = world.getPlayers();
+
+        for (ServerPlayerEntity player : worldPlayers) {
+            long cell = ChunkPos.toLong(player.getBlockX() >> 4, player.getBlockZ() >> 4);
+            Tracked tracked = players.get(player);
+            if (tracked == null) {
+                players.put(player, new Tracked(cell, stamp));
+                addToCell(cell, player);
+            } else {
+                if (tracked.cell != cell) {
+                    removeFromCell(tracked.cell, player);
+                    addToCell(cell, player);
+                    tracked.cell = cell;
+                }
+                tracked.stamp = stamp;
+            }
+        }
+
+        if (players.size() != worldPlayers.size()) {
+            ObjectIterator<Reference2ObjectMap.Entry<ServerPlayerEntity, Tracked>> iter =
+                Reference2ObjectMaps.fastIterator(players);
+            while (iter.hasNext()) {
+                Reference2ObjectMap.Entry<ServerPlayerEntity, Tracked> entry = iter.next();
+                Tracked tracked = entry.getValue();
+                if (tracked.stamp != stamp) {
+                    removeFromCell(tracked.cell, entry.getKey());
+                    iter.remove();
+                }
+            }
+        }
+    }
+
+    private void addToCell(long cell, ServerPlayerEntity player) {
+        cells.computeIfAbsent(cell, c -> new ObjectArrayList<>(4)).add(player);
+    }
+
+    private void removeFromCell(long cell, ServerPlayerEntity player) {
+        List<ServerPlayerEntity> list = cells.get(cell);
+        if (list != null && list.remove(player) && list.isEmpty()) cells.remove(cell);
+    }
+
+    /**
+     * Gets all players whose positions are within a box.
+     *
+     * @param box the box to search.
+     * @return all players inside the box.
+     */
+    public List<ServerPlayerEntity> getInBox(Box box) {
+        List<ServerPlayerEntity> result = new ArrayList<>();
+        forEachCandidate(MathHelper.floor(box.minX) >> 4, MathHelper.floor(box.minZ) >> 4,
+            MathHelper.floor(box.maxX) >> 4, MathHelper.floor(box.maxZ) >> 4, player -> {
+                if (box.contains(player.getPos())) result.add(player);
+            });
+        return result;
+    }
+
+    /**
+     * Gets all players within a distance of a position.
+     *
+     * @param center the center of the sphere to search.
+     * @param radius the radius of the sphere to search.
+     * @return all players at most {@code radius} blocks away from {@code center}.
+     */
+    public List<ServerPlayerEntity> getInSphere(Vec3d center, double radius) {
+        double radiusSq = radius * radius;
+        List<ServerPlayerEntity> result = new ArrayList<>();
+        forEachCandidate(MathHelper.floor(center.x - radius) >> 4, MathHelper.floor(center.z - radius) >> 4,
+            MathHelper.floor(center.x + radius) >> 4, MathHelper.floor(center.z + radius) >> 4, player -> {
+                if (player.squaredDistanceTo(center) <= radiusSq) result.add(player);
+            });
+        return result;
+    }
+
+    /**
+     * Gets all players in chunks within a square chunk radius of a chunk.
+     *
+     * @param center the center chunk.
+     * @param radius the chunk radius, where 0 means only the center chunk.
+     * @return all players in chunks at most {@code radius} chunks away from {@code center} on each axis.
+     */
+    public List<ServerPlayerEntity> getInChunkRadius(ChunkPos center, int radius) {
+        List<ServerPlayerEntity> result = new ArrayList<>();
+        forEachCandidate(center.x - radius, center.z - radius, center.x + radius, center.z + radius, player -> {
+            if (Math.abs((player.getBlockX() >> 4) - center.x) <= radius &&
+                Math.abs((player.getBlockZ() >> 4) - center.z) <= radius) {
+                result.add(player);
+            }
+        });
+        return result;
+    }
+
+    private void forEachCandidate(int minCellX, int minCellZ, int maxCellX, int maxCellZ,
+                                  Consumer<ServerPlayerEntity> action) {
+        // players may have moved into a neighboring chunk since the last update
+        minCellX--;
+        minCellZ--;
+        maxCellX++;
+        maxCellZ++;
+
+        // big searches are cheaper as a scan over every indexed player
+        long cellCount = ((long) maxCellX - minCellX + 1) * ((long) maxCellZ - minCellZ + 1);
+        if (cellCount > cells.size()) {
+            for (ServerPlayerEntity player : players.keySet()) {
+                if (isPresent(player)) action.accept(player);
+            }
+            return;
+        }
+
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                List<ServerPlayerEntity> list = cells.get(ChunkPos.toLong(cellX, cellZ));
+                if (list == null) continue;
+                for (ServerPlayerEntity player : list) {
+                    if (isPresent(player)) action.accept(player);
+                }
+            }
+        }
+    }
+
+    private boolean isPresent(ServerPlayerEntity player) {
+        // players that left this world since the last update are still indexed
+        return !player.isRemoved() && player.getServerWorld() == world;
+    }
+
+    private static final class Tracked {
+        long cell;
+        int stamp;
+
+        Tracked(long cell, int stamp) {
+            this.cell = cell;
+            this.stamp = stamp;
+        }
+    }
+}
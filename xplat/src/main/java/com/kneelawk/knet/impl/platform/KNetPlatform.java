@@ -26,15 +26,20 @@
 package com.kneelawk.knet.impl.platform;
 
 import java.util.ServiceLoader;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
 
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.network.packet.CustomPayload;
 import net.minecraft.registry.RegistryKey;
+import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Vec3d;
 import net.minecraft.world.World;
 
 public interface KNetPlatform {
@@ -64,4 +69,23 @@ public interface KNetPlatform {
     default void sendPlayToTrackingBlock(ServerWorld world, BlockPos pos, CustomPayload payload) {
         sendPlayToTrackingChunk(world, new ChunkPos(pos), payload);
     }
+
+    /**
+     * Sends a payload to all players in a world within a radius of a position.
+     *
+     * @param world   the world to send to.
+     * @param pos     the center of the sphere.
+     * @param radius  the radius of the sphere.
+     * @param except  a player to skip.
+     * @param payload supplies the payload, only called once there is a player to send to.
+     */
+    void sendPlayToNearby(ServerWorld world, Vec3d pos, double radius, @Nullable ServerPlayerEntity except,
+                          Supplier<CustomPayload> payload);
+
+    /**
+     * Gets an object uniquely identifying the client's current connection to the server.
+     *
+     * @return the client's connection key, or {@code null} if not connected or not on the client.
+     */
+    @Nullable Object getServerConnectionKey();
 }